@@ -0,0 +1,164 @@
+package com.api.notebook.utils;
+
+import com.api.notebook.enums.WorksEnum;
+import com.api.notebook.models.SheetModel;
+import com.api.notebook.models.entities.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//Export cost on synthetic notebooks, run with: mvn -P benchmark test-compile exec:exec
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NotebookExportBenchmark {
+
+	private static final WorksEnum[] WORK_TYPES = {WorksEnum.TRABALHO, WorksEnum.TAREFA, WorksEnum.AVALIAÇÃO};
+
+	@Param({"40", "200", "1000"})
+	private int studentsCount;
+
+	@Param({"50", "200"})
+	private int lessonsCount;
+
+	@Param({"10", "60"})
+	private int worksCount;
+
+	private NotebookEntity notebook;
+	private Map<String, Integer> workTypeWeights;
+	private AttendanceIndex attendanceIndex;
+	private GradeMatrix gradeMatrix;
+	private ExecutorService sheetExecutor;
+
+	@Setup
+	public void createNotebook() {
+		var random = new Random(42);
+		notebook = new NotebookEntity();
+		notebook.setId(UUID.randomUUID());
+
+		List<StudentEntity> students = new ArrayList<>();
+		for (int x = 0; x < studentsCount; x++) {
+			var student = new StudentEntity();
+			student.setId(UUID.randomUUID());
+			student.setName("Aluno " + x);
+			student.setNumber(x + 1);
+			students.add(student);
+		}
+		notebook.setStudents(students);
+
+		List<LessonEntity> lessons = new ArrayList<>();
+		for (int x = 0; x < lessonsCount; x++) {
+			var lesson = new LessonEntity();
+			lesson.setId(UUID.randomUUID());
+			lesson.setQuantity(x % 3 == 0 ? 1 : 2);
+			lesson.setDate(LocalDate.of(2023, 2, 1).plusDays(x));
+			lesson.setObservations(x % 4 == 0 ? "Observação da aula " + x : "");
+
+			List<AttendanceEntity> attendances = new ArrayList<>();
+			for (int y = 0; y < lesson.getQuantity(); y++) {
+				var attendance = new AttendanceEntity();
+				attendance.setId(UUID.randomUUID());
+				List<UUID> presentStudentsIds = new ArrayList<>();
+				List<UUID> absentStudentsIds = new ArrayList<>();
+				for (StudentEntity student:
+						students) {
+					if (random.nextInt(10) > 0) presentStudentsIds.add(student.getId());
+					else absentStudentsIds.add(student.getId());
+				}
+				attendance.setPresentStudentsIds(presentStudentsIds.toArray(UUID[]::new));
+				attendance.setAbsentStudentsIds(absentStudentsIds.toArray(UUID[]::new));
+				attendances.add(attendance);
+			}
+			lesson.setAttendances(attendances);
+			lessons.add(lesson);
+		}
+		notebook.setLessons(lessons);
+
+		List<WorkEntity> works = new ArrayList<>();
+		for (int x = 0; x < worksCount; x++) {
+			var work = new WorkEntity();
+			work.setId(UUID.randomUUID());
+			work.setTitle("Trabalho " + x);
+			work.setType(WORK_TYPES[x % WORK_TYPES.length]);
+			work.setDeliveryDate(LocalDate.of(2023, 2, 1).plusDays(x));
+
+			List<GradeEntity> grades = new ArrayList<>();
+			for (StudentEntity student:
+					students) {
+				if (random.nextInt(20) == 0) continue; //Some students miss the work
+				var grade = new GradeEntity();
+				grade.setId(UUID.randomUUID());
+				grade.setGrade(random.nextInt(21) / 2.0);
+				grade.setStudent(student);
+				grades.add(grade);
+			}
+			work.setGrades(grades);
+			works.add(work);
+		}
+		notebook.setWorks(works);
+
+		workTypeWeights = new LinkedHashMap<>();
+		workTypeWeights.put(WorksEnum.TRABALHO.name(), 4);
+		workTypeWeights.put(WorksEnum.TAREFA.name(), 3);
+		workTypeWeights.put(WorksEnum.AVALIAÇÃO.name(), 3);
+
+		//Sheet builders expect the collections in the sheet order, like finalizeNotebook leaves them
+		students.sort(Comparator.comparing(StudentEntity::getNumber));
+		lessons.sort(Comparator.comparing(LessonEntity::getDate));
+		works.sort(Comparator.comparing(WorkEntity::getDeliveryDate));
+		attendanceIndex = AttendanceIndex.of(students, lessons);
+		gradeMatrix = GradeMatrix.of(students, works);
+
+		//Same size as the default notebook.export.sheet-pool-size
+		sheetExecutor = Executors.newFixedThreadPool(4);
+	}
+
+	@TearDown
+	public void stopSheetExecutor() {
+		sheetExecutor.shutdownNow();
+	}
+
+	@Benchmark
+	public void finalizeNotebook() throws IOException {
+		NotebookUtils.finalizeNotebook(notebook, workTypeWeights, sheetExecutor, OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public void buildFrequenciasSheet(Blackhole blackhole) {
+		consumeRows(NotebookUtils.buildFrequenciasSheet(notebook, attendanceIndex), blackhole);
+	}
+
+	@Benchmark
+	public void buildMediasSheet(Blackhole blackhole) {
+		consumeRows(NotebookUtils.buildMediasSheet(notebook, workTypeWeights, gradeMatrix), blackhole);
+	}
+
+	@Benchmark
+	public void buildObservacoesSheet(Blackhole blackhole) {
+		consumeRows(NotebookUtils.buildObservacoesSheet(notebook), blackhole);
+	}
+
+	@Benchmark
+	public void buildFerramentasDeAvaliacaoSheet(Blackhole blackhole) {
+		consumeRows(NotebookUtils.buildFerramentasDeAvaliacaoSheet(notebook, workTypeWeights, gradeMatrix), blackhole);
+	}
+
+	//Rows are built while rendering, so they are built here as well to keep their cost in the measure
+	private static void consumeRows(SheetModel sheetModel, Blackhole blackhole) {
+		blackhole.consume(sheetModel);
+		for (int x = 0; x < sheetModel.getRowsCount(); x++) {
+			blackhole.consume(sheetModel.getRowBuilder().apply(x));
+		}
+	}
+
+}
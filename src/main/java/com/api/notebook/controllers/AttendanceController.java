@@ -1,17 +1,18 @@
 package com.api.notebook.controllers;
 
 import com.api.notebook.models.dtos.AttendanceDto;
-import com.api.notebook.models.entities.AttendanceEntity;
 import com.api.notebook.services.AttendanceService;
-import com.api.notebook.services.LessonService;
-import com.api.notebook.services.StudentService;
+import com.api.notebook.services.EntityStreamService;
+import com.api.notebook.services.NotebookService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.UUID;
@@ -22,8 +23,8 @@ import java.util.UUID;
 public class AttendanceController {
 
     private final AttendanceService attendanceService;
-    private final StudentService studentService;
-    private final LessonService lessonService;
+    private final NotebookService notebookService;
+    private final EntityStreamService entityStreamService;
 
     @PostMapping("/create") //POST endpoint to create an attendance entity
     @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
@@ -31,27 +32,21 @@ public class AttendanceController {
             @RequestParam(value = "lessonId") UUID lessonId,
             @RequestBody @Valid @NotNull List<AttendanceDto> attendanceDtos
     ) {
-        int currentIndex = 0;
-        for(AttendanceDto attendanceDto:
-                attendanceDtos) {
-            var attendanceEntity = new AttendanceEntity();
-            studentService.setPresentStudentsToAttendance(attendanceDto.getPresentStudentsIds(), attendanceEntity);
-            studentService.setAbsentStudentsToAttendance(attendanceDto.getAbsentStudentsIds(), attendanceEntity);
-            lessonService.setAttendanceToLesson(lessonId, attendanceEntity, currentIndex);
-            attendanceService.saveAttendance(attendanceEntity);
-            currentIndex++;
+        var missingBefore = notebookService.countMissingLesson(lessonId);
+        var lessonOptional = attendanceService.saveAttendancesByLesson(lessonId, attendanceDtos);
+        if (lessonOptional.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
+        notebookService.touchNotebookByLesson(lessonOptional.get().getNotebook().getId(), lessonId, missingBefore);
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
-    @GetMapping("/all") //GET endpoint to get all attendances
+    @GetMapping("/all") //GET endpoint to stream all attendances, one JSON per line
     @PreAuthorize("hasRole('ROLE_ADM')")
-    public ResponseEntity<Object> getAllAttendances() {
-        var attendances = attendanceService.findAllAttendances();
-        if (attendances.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
-        return ResponseEntity.ok(attendances);
+    public ResponseEntity<StreamingResponseBody> getAllAttendances() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(outputStream -> entityStreamService.writeNdjson(attendanceService::streamAllAttendances, outputStream));
     }
 
     @GetMapping("/all/{lessonId}") //GET endpoint to get all attendances
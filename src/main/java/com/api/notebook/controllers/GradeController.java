@@ -3,50 +3,86 @@ package com.api.notebook.controllers;
 import com.api.notebook.models.dtos.AttendanceDto;
 import com.api.notebook.models.dtos.GradeDto;
 import com.api.notebook.models.entities.AttendanceEntity;
-import com.api.notebook.models.entities.GradeEntity;
+import com.api.notebook.services.EntityStreamService;
 import com.api.notebook.services.GradeService;
-import com.api.notebook.services.StudentService;
+import com.api.notebook.services.NotebookService;
 import com.api.notebook.services.WorkService;
+import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
-import org.springframework.beans.BeanUtils;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
+@Validated
 @RequiredArgsConstructor
 @RequestMapping("/grades")
 public class GradeController {
 
     private final GradeService gradeService;
     private final WorkService workService;
-    private final StudentService studentService;
+    private final NotebookService notebookService;
+    private final EntityStreamService entityStreamService;
 
     @PostMapping("/create") //POST endpoint to create a grade entity
     @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
     public ResponseEntity<Object> createGrade(@RequestParam(value = "workId") UUID workId,
                                                    @RequestBody @Valid @NotNull GradeDto gradeDto) {
-        var gradeEntity = new GradeEntity();
-        BeanUtils.copyProperties(gradeDto, gradeEntity);
-        studentService.setStudentToGrade(gradeDto.getStudentId(), gradeEntity);
-        workService.setGradeToWork(workId, gradeEntity);
-        gradeService.saveGrade(gradeEntity);
+        var workOptional = workService.findWorkById(workId);
+        if (workOptional.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        var missingBefore = notebookService.countMissingWork(workId);
+        try { //A grade already given to the student in this work is updated
+            gradeService.upsertGradesByWork(workOptional.get(), Map.of(gradeDto.getStudentId(), gradeDto.getGrade()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+        notebookService.touchNotebookByWork(workOptional.get().getNotebook().getId(), workId, missingBefore);
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
-    @GetMapping("/all") //GET endpoint to get all grades
-    @PreAuthorize("hasRole('ROLE_ADM')")
-    public ResponseEntity<Object> getAllGrades() {
-        var grades = gradeService.findAllGrades();
-        if (grades.isEmpty()) {
+    @PostMapping("/batch") //POST endpoint to create or update the grades of many students in a work
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    public ResponseEntity<Object> createGrades(@RequestParam(value = "workId") UUID workId,
+                                               @RequestBody @NotNull @NotEmpty List<@Valid GradeDto> gradeDtos) {
+        var workOptional = workService.findWorkById(workId);
+        if (workOptional.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
-        return ResponseEntity.ok(grades);
+        Map<UUID, Double> studentGrades = new LinkedHashMap<>(); //Repeated students keep the last grade
+        for (GradeDto gradeDto:
+                gradeDtos) {
+            studentGrades.put(gradeDto.getStudentId(), gradeDto.getGrade());
+        }
+        var missingBefore = notebookService.countMissingWork(workId);
+        try {
+            gradeService.upsertGradesByWork(workOptional.get(), studentGrades);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+        notebookService.touchNotebookByWork(workOptional.get().getNotebook().getId(), workId, missingBefore);
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
+    @GetMapping("/all") //GET endpoint to stream all grades, one JSON per line
+    @PreAuthorize("hasRole('ROLE_ADM')")
+    public ResponseEntity<StreamingResponseBody> getAllGrades() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(outputStream -> entityStreamService.writeNdjson(gradeService::streamAllGrades, outputStream));
     }
 
     @GetMapping("/all/{workId}") //GET endpoint to get all grades
@@ -61,4 +97,9 @@ public class GradeController {
         return ResponseEntity.ok(workGrades);
     }
 
+    @ExceptionHandler(ConstraintViolationException.class) //Grades rejected by the method validation
+    public ResponseEntity<Object> handleConstraintViolation(@NotNull ConstraintViolationException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
 }
@@ -1,23 +1,25 @@
 package com.api.notebook.controllers;
 
-import com.api.notebook.enums.RoleEnum;
 import com.api.notebook.models.dtos.LessonDto;
 import com.api.notebook.models.entities.LessonEntity;
 import com.api.notebook.services.BNCCCodeService;
+import com.api.notebook.services.EntityStreamService;
 import com.api.notebook.services.LessonService;
 import com.api.notebook.services.NotebookService;
+import com.api.notebook.utils.ScrollUtils;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.BeanUtils;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
@@ -31,6 +33,10 @@ public class LessonController {
     private final LessonService lessonService;
     private final NotebookService notebookService;
     private final BNCCCodeService bnccCodeService;
+    private final EntityStreamService entityStreamService;
+
+    @Value("${pagination.page-size}")
+    private int pageSize;
 
     @PostMapping("/create") //POST endpoint to create a lesson entity
     @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
@@ -55,93 +61,83 @@ public class LessonController {
         }
         notebookService.setLessonToNotebook(notebookId, lessonEntity);
         lessonService.saveLesson(lessonEntity);
+        notebookService.touchNotebookByLesson(notebookId, lessonEntity.getId(), 0);
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
-    @GetMapping("/all") //GET endpoint to get all lessons
+    @GetMapping("/all") //GET endpoint to stream all lessons, one JSON per line
     @PreAuthorize("hasRole('ROLE_ADM')")
-    public ResponseEntity<Object> getAllLessons() {
-        var lessons = lessonService.findAllLessons();
-        if (lessons.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
-        return ResponseEntity.ok(lessons);
+    public ResponseEntity<StreamingResponseBody> getAllLessons() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(outputStream -> entityStreamService.writeNdjson(lessonService::streamAllLessons, outputStream));
     }
 
-    @GetMapping("/all/{notebookId}") //GET endpoint to get all lessons
+    @GetMapping("/all/{notebookId}") //GET endpoint to get the notebook lessons one slice at a time
     @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
     public ResponseEntity<Object> getAllLessonsByNotebookId(
             @PathVariable(value = "notebookId") UUID notebookId,
-            @RequestParam(value = "pageNum", defaultValue = "0", required = false) String pageNum,
+            @RequestParam(value = "cursor", required = false) String cursor,
             @RequestParam(value = "direction", defaultValue = "desc", required = false) String direction,
-            @RequestParam(value = "sortBy", defaultValue = "status", required = false) String sortBy
+            @RequestParam(value = "sortBy", defaultValue = "date", required = false) String sortBy
     ) {
-        var pageable = PageRequest.of(
-                Integer.parseInt(pageNum),
-                10,
-                Sort.Direction.fromString(direction),
-                sortBy
-        );
-        var notebookLessons = lessonService.findAllLessonsByNotebookId(notebookId, pageable);
+        Sort sort;
+        KeysetScrollPosition position;
+        try {
+            sort = ScrollUtils.getSort(sortBy, direction, LessonService.SORT_FIELDS);
+            position = ScrollUtils.decodeCursor(cursor, sortBy, LessonService.SORT_FIELDS);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+        var notebookLessons = lessonService.findAllLessonsByNotebookId(notebookId, sort, position, pageSize);
         if (notebookLessons.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
         }
-        return ResponseEntity.ok(notebookLessons);
+        return ResponseEntity.ok(ScrollUtils.toSlice(notebookLessons));
     }
 
     @GetMapping("/{lessonId}")
-    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and " +
+            "(hasRole('ROLE_ADM') or @notebookOwnershipService.isLessonOwner(#lessonId, principal))")
     public ResponseEntity<Object> getLessonById(@PathVariable(value = "lessonId") UUID lessonId) {
         var lessonOptional = lessonService.findLessonById(lessonId);
         if (lessonOptional.isPresent()) {
-            var authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (
-                    !lessonOptional.get().getNotebook().getUser().getId().equals(authentication.getPrincipal()) &&
-                    !authentication.getAuthorities().contains(new SimpleGrantedAuthority(RoleEnum.ROLE_ADM.name()))
-            ) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-            }
             return ResponseEntity.ok(lessonOptional.get());
         }
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Aula não encontrada!");
     }
 
     @PutMapping("/edit/{lessonId}")
-    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and @notebookOwnershipService.isLessonOwner(#lessonId, principal)")
     public ResponseEntity<Object> editLesson(
             @PathVariable(value = "lessonId") UUID lessonId,
             @RequestBody @Valid LessonDto lessonDto) {
         var lessonOptional = lessonService.findLessonById(lessonId);
         if (lessonOptional.isPresent()) {
-            var authenticationId = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (lessonOptional.get().getNotebook().getUser().getId().equals(authenticationId)) {
-                var lessonEntity = new LessonEntity();
-                BeanUtils.copyProperties(lessonOptional.get(), lessonEntity);
-                BeanUtils.copyProperties(lessonDto, lessonEntity);
-                if (lessonDto.getBnccCodes() != null && !lessonDto.getBnccCodes().isEmpty()) {
-                    if (!bnccCodeService.setBnccCodesToLesson(lessonDto.getBnccCodes(), lessonEntity)) {
-                        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Código BNCC não reconhecido!");
-                    }
+            var lessonEntity = new LessonEntity();
+            BeanUtils.copyProperties(lessonOptional.get(), lessonEntity);
+            BeanUtils.copyProperties(lessonDto, lessonEntity);
+            if (lessonDto.getBnccCodes() != null && !lessonDto.getBnccCodes().isEmpty()) {
+                if (!bnccCodeService.setBnccCodesToLesson(lessonDto.getBnccCodes(), lessonEntity)) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Código BNCC não reconhecido!");
                 }
-                lessonService.saveLesson(lessonEntity);
-                return ResponseEntity.ok().build();
             }
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            lessonService.saveLesson(lessonEntity);
+            notebookService.touchNotebook(lessonEntity.getNotebook().getId());
+            return ResponseEntity.ok().build();
         }
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Aula não encontrada!");
     }
 
     @DeleteMapping("/delete/{lessonId}")
-    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and @notebookOwnershipService.isLessonOwner(#lessonId, principal)")
     public ResponseEntity<Object> deleteLesson(@PathVariable(value = "lessonId") UUID lessonId) {
         var lessonOptional = lessonService.findLessonById(lessonId);
         if (lessonOptional.isPresent()) {
-            var authenticationId = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (lessonOptional.get().getNotebook().getUser().getId().equals(authenticationId)) {
-                lessonService.deleteLessonById(lessonId);
-                return ResponseEntity.ok().build();
-            }
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            var missingBefore = notebookService.countMissingLesson(lessonId);
+            lessonService.deleteLessonById(lessonId);
+            notebookService.touchNotebookByLesson(lessonOptional.get().getNotebook().getId(), lessonId, missingBefore);
+            return ResponseEntity.ok().build();
         }
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Aula não encontrada!");
     }
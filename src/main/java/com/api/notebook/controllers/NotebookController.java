@@ -1,8 +1,6 @@
 package com.api.notebook.controllers;
 
-import com.api.notebook.enums.RoleEnum;
-import com.api.notebook.enums.StatusEnum;
-import com.api.notebook.enums.VCodeEnum;
+import com.api.notebook.enums.*;
 import com.api.notebook.models.EmailModel;
 import com.api.notebook.models.dtos.NotebookDto;
 import com.api.notebook.models.entities.NotebookEntity;
@@ -11,11 +9,14 @@ import com.api.notebook.producers.MailProducer;
 import com.api.notebook.services.*;
 import com.api.notebook.utils.CodeGenerator;
 import com.api.notebook.utils.Constants;
+import com.api.notebook.utils.ScrollUtils;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.BeanUtils;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -25,10 +26,12 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
+import java.nio.file.Files;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -37,11 +40,21 @@ import java.util.UUID;
 @RequestMapping("/notebooks")
 public class NotebookController {
 
+    //Jobs live in the memory of the instance that runs them, see ExportJobService
+    private static final String EXPORT_JOB_NOT_FOUND =
+            "Exportação não encontrada! Ela pode ter expirado, finalize a caderneta novamente.";
+
     private final NotebookService notebookService;
+    private final NotebookOwnershipService notebookOwnershipService;
     private final UserService userService;
-    private final StudentService studentService;
     private final VCodeService vCodeService;
     private final MailProducer mailProducer;
+    private final ExportJobService exportJobService;
+    private final RefreshJobService refreshJobService;
+    private final NotebookDataExportService notebookDataExportService;
+
+    @Value("${pagination.page-size}")
+    private int pageSize;
 
 
 
@@ -56,7 +69,6 @@ public class NotebookController {
         notebookEntity.setStatus(StatusEnum.ON);
         notebookEntity.setCreateDate(LocalDate.now(ZoneId.of("UTC-3")));
         userService.setNotebookToUser(teacherId, notebookEntity);
-        studentService.setStudentsToNotebookByClass(notebookEntity.getClasse(), notebookEntity);
         notebookService.saveNotebook(notebookEntity);
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
@@ -78,11 +90,11 @@ public class NotebookController {
         return ResponseEntity.ok(notebooks);
     }
 
-    @GetMapping("/all/{teacherId}") //GET endpoint to get all notebooks
+    @GetMapping("/all/{teacherId}") //GET endpoint to get the teacher notebooks one slice at a time
     @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
     public ResponseEntity<Object> getAllNotebooksByTeacherId(
             @PathVariable(value = "teacherId") UUID teacherId,
-            @RequestParam(value = "pageNum", defaultValue = "0", required = false) String pageNum,
+            @RequestParam(value = "cursor", required = false) String cursor,
             @RequestParam(value = "direction", defaultValue = "desc", required = false) String direction,
             @RequestParam(value = "sortBy", defaultValue = "status", required = false) String sortBy
     ) {
@@ -93,31 +105,27 @@ public class NotebookController {
         ) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
-        var pageable = PageRequest.of(
-                Integer.parseInt(pageNum),
-                10,
-                Sort.Direction.fromString(direction),
-                sortBy
-        );
-        var teacherNotebooks = notebookService.findAllNotebooksByTeacherId(teacherId, pageable);
+        Sort sort;
+        KeysetScrollPosition position;
+        try {
+            sort = ScrollUtils.getSort(sortBy, direction, NotebookService.SORT_FIELDS);
+            position = ScrollUtils.decodeCursor(cursor, sortBy, NotebookService.SORT_FIELDS);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+        var teacherNotebooks = notebookService.findAllNotebooksByTeacherId(teacherId, sort, position, pageSize);
         if (teacherNotebooks.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
         }
-        return ResponseEntity.ok(teacherNotebooks);
+        return ResponseEntity.ok(ScrollUtils.toSlice(teacherNotebooks));
     }
 
     @GetMapping("/{notebookId}")
-    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and " +
+            "(hasRole('ROLE_ADM') or @notebookOwnershipService.isNotebookOwner(#notebookId, principal))")
     public ResponseEntity<Object> getNotebookById(@PathVariable(value = "notebookId") UUID notebookId) {
         var notebook = notebookService.findNotebookById(notebookId);
         if (notebook.isPresent()) {
-            var authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (
-                    !notebook.get().getUser().getId().equals(authentication.getPrincipal()) &&
-                    !authentication.getAuthorities().contains(new SimpleGrantedAuthority(RoleEnum.ROLE_ADM.name()))
-            ) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-            }
             return ResponseEntity.ok(notebook.get());
         }
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Caderneta não encontrada!");
@@ -131,34 +139,42 @@ public class NotebookController {
     //EDIT
 
     @PutMapping("/edit/{notebookId}")
-    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and @notebookOwnershipService.isNotebookOwner(#notebookId, principal)")
     public ResponseEntity<?> editNotebook(@PathVariable(value = "notebookId") UUID notebookId,
                                                @RequestBody @Valid NotebookDto notebookDto) {
         var notebookOptional = notebookService.findNotebookById(notebookId);
         if (notebookOptional.isPresent()) {
-            var authenticationId = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (notebookOptional.get().getUser().getId().equals(authenticationId)) {
-                var notebookEntity = new NotebookEntity();
-                BeanUtils.copyProperties(notebookOptional.get(), notebookEntity);
-                BeanUtils.copyProperties(notebookDto, notebookEntity);
-                studentService.setStudentsToNotebookByClass(notebookEntity.getClasse(), notebookEntity);
-                notebookService.saveNotebook(notebookEntity);
-                return ResponseEntity.ok().build();
-            }
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            var notebookEntity = new NotebookEntity();
+            BeanUtils.copyProperties(notebookOptional.get(), notebookEntity);
+            BeanUtils.copyProperties(notebookDto, notebookEntity);
+            notebookService.saveNotebook(notebookEntity);
+            notebookService.refreshNotebooks(List.of(notebookId)); //The class may have changed, and the roster with it
+            return ResponseEntity.ok().build();
         }
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Caderneta não encontrada!");
     }
 
-    @PutMapping("refresh-all")
+    @PutMapping("refresh-all") //PUT endpoint to refresh the notebooks behind their class roster in the background
+    @PreAuthorize("hasAnyRole('ROLE_ADM')")
+    public ResponseEntity<Object> refreshAllNotebooks(
+            @RequestParam(value = "resumeAfter", required = false) UUID resumeAfter
+    ) {
+        var jobOptional = refreshJobService.submitRefreshJob(resumeAfter);
+        if (jobOptional.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(refreshJobService.findLastJob().orElse(null));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(jobOptional.get());
+    }
+
+    @GetMapping("refresh-all/job") //GET endpoint to follow the last refresh job progress and resume point
     @PreAuthorize("hasAnyRole('ROLE_ADM')")
-    public void refreshAllNotebooks() {
-        var allNotebooks = notebookService.findAllNotebooks();
-        for (NotebookEntity notebook:
-                allNotebooks) {
-            studentService.setStudentsToNotebookByClass(notebook.getClasse(), notebook);
-            notebookService.saveNotebook(notebook);
+    public ResponseEntity<Object> getRefreshJob() {
+        var jobOptional = refreshJobService.findLastJob();
+        if (jobOptional.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Nenhuma atualização iniciada desde que o servidor foi reiniciado!");
         }
+        return ResponseEntity.ok(jobOptional.get());
     }
 
     //EDIT
@@ -225,19 +241,18 @@ public class NotebookController {
             @RequestParam(value = "vCode") Integer vCode
     ) {
 
-        var notebookOptional = notebookService.findNotebookById(notebookId);
-        if (notebookOptional.isEmpty()) {
+        var ownerOptional = notebookOwnershipService.findNotebookOwnerId(notebookId);
+        if (ownerOptional.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Caderneta não encontrada!");
         }
 
         var auth = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        if (!notebookOptional.get().getUser().getId().equals(auth)) {
+        if (!ownerOptional.get().equals(auth)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body("Você não pode deletar a caderneta de outros usuários!");
         }
 
-        var vCodeOptional = vCodeService.findByUserIdAndType(
-                notebookOptional.get().getUser().getId(), VCodeEnum.NOTEBOOK_DELETE);
+        var vCodeOptional = vCodeService.findByUserIdAndType(ownerOptional.get(), VCodeEnum.NOTEBOOK_DELETE);
         if (vCodeOptional.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("Nenhuma requisição para deletar essa caderneta encontrada!");
@@ -278,19 +293,14 @@ public class NotebookController {
     }
 
     @GetMapping("/{notebookId}/missing-tasks")
-    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and @notebookOwnershipService.isNotebookOwner(#notebookId, principal)")
     public ResponseEntity<Object> verifyMissingTasks(
             @PathVariable(value = "notebookId") UUID notebookId
     ) {
-        var notebookOptional = notebookService.findNotebookById(notebookId);
-        if (notebookOptional.isEmpty()) {
+        if (!notebookOwnershipService.existsNotebook(notebookId)) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
-        var authenticationId = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        if (!notebookOptional.get().getUser().getId().equals(authenticationId)) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        }
-        var missingTasks = notebookService.verifyMissingTasksByNotebook(notebookOptional.get());
+        var missingTasks = notebookService.verifyMissingTasksByNotebook(notebookId);
         if (missingTasks.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
         }
@@ -304,31 +314,151 @@ public class NotebookController {
 
     //FINALIZATION
 
-    @PutMapping("/finalize/{notebookId}")
+    @PostMapping("/{notebookId}/averages-preview") //POST endpoint to see the averages without finalizing
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and " +
+            "(hasRole('ROLE_ADM') or @notebookOwnershipService.isNotebookOwner(#notebookId, principal))")
+    public ResponseEntity<Object> previewAverages(
+            @PathVariable(value = "notebookId") UUID notebookId,
+            @RequestBody Map<String, Integer> workTypeWeights
+    ) {
+        if (!notebookOwnershipService.existsNotebook(notebookId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        var studentAverages = notebookService.previewAverages(notebookId, workTypeWeights);
+        if (studentAverages.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+        }
+        return ResponseEntity.ok(studentAverages);
+    }
+
+    @PostMapping("/export") //POST endpoint to download the filtered notebooks as one ZIP
     @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    public ResponseEntity<StreamingResponseBody> exportNotebooks(
+            @RequestParam(value = "teacherId", required = false) UUID teacherId,
+            @RequestParam(value = "classe", required = false) ClassEnum classe,
+            @RequestParam(value = "subject", required = false) SubjectEnum subject,
+            @RequestParam(value = "bimester", required = false) BimesterEnum bimester,
+            @RequestBody Map<String, Integer> workTypeWeights
+    ) {
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (
+                !authentication.getPrincipal().equals(teacherId) &&
+                !authentication.getAuthorities().contains(new SimpleGrantedAuthority(RoleEnum.ROLE_ADM.name()))
+        ) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        var notebookIds = notebookService.findAllNotebookIdsByFilters(teacherId, classe, subject, bimester);
+        if (notebookIds.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+        }
+
+        var headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/zip"));
+        headers.setContentDispositionFormData("attachment", "cadernetas.zip");
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(outputStream -> exportJobService.writeNotebooksZip(notebookIds, workTypeWeights, outputStream));
+    }
+
+    @GetMapping("/{notebookId}/export/attendances") //GET endpoint to stream the raw attendances
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and " +
+            "(hasRole('ROLE_ADM') or @notebookOwnershipService.isNotebookOwner(#notebookId, principal))")
+    public ResponseEntity<StreamingResponseBody> exportAttendances(
+            @PathVariable(value = "notebookId") UUID notebookId,
+            @RequestParam(value = "format", defaultValue = "CSV", required = false) ExportFormatEnum format
+    ) {
+        if (!notebookOwnershipService.existsNotebook(notebookId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok()
+                .headers(getRawExportHeaders(format, "frequencias"))
+                .body(outputStream -> notebookDataExportService.writeAttendances(notebookId, format, outputStream));
+    }
+
+    @GetMapping("/{notebookId}/export/grades") //GET endpoint to stream the raw grades
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and " +
+            "(hasRole('ROLE_ADM') or @notebookOwnershipService.isNotebookOwner(#notebookId, principal))")
+    public ResponseEntity<StreamingResponseBody> exportGrades(
+            @PathVariable(value = "notebookId") UUID notebookId,
+            @RequestParam(value = "format", defaultValue = "CSV", required = false) ExportFormatEnum format
+    ) {
+        if (!notebookOwnershipService.existsNotebook(notebookId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok()
+                .headers(getRawExportHeaders(format, "notas"))
+                .body(outputStream -> notebookDataExportService.writeGrades(notebookId, format, outputStream));
+    }
+
+    private static @NotNull HttpHeaders getRawExportHeaders(ExportFormatEnum format, String fileName) {
+        var headers = new HttpHeaders();
+        if (format == ExportFormatEnum.CSV) {
+            headers.setContentType(MediaType.parseMediaType("text/csv; charset=UTF-8"));
+            headers.setContentDispositionFormData("attachment", fileName + ".csv");
+        } else {
+            headers.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+            headers.setContentDispositionFormData("attachment", fileName + ".ndjson");
+        }
+        return headers;
+    }
+
+    @PutMapping("/finalize/{notebookId}")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and @notebookOwnershipService.isNotebookOwner(#notebookId, principal)")
     public ResponseEntity<Object> finalizeNotebook(
             @PathVariable(value = "notebookId") UUID notebookId,
-            @RequestBody Map<String, Integer> workTypeWeights) throws IOException {
-        var notebookOptional = notebookService.findNotebookById(notebookId);
-        if (notebookOptional.isEmpty()) {
+            @RequestBody Map<String, Integer> workTypeWeights) {
+        if (!notebookOwnershipService.existsNotebook(notebookId)) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
+        var authenticationId = (UUID) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        var jobOptional = exportJobService.submitFinalizeJob(notebookId, authenticationId, workTypeWeights);
+        if (jobOptional.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("Muitas cadernetas sendo finalizadas, tente novamente mais tarde!");
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(jobOptional.get());
+    }
+
+    @GetMapping("/finalize/jobs/{jobId}")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    public ResponseEntity<Object> getFinalizeJob(@PathVariable(value = "jobId") UUID jobId) {
+        var jobOptional = exportJobService.findJobById(jobId);
+        if (jobOptional.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(EXPORT_JOB_NOT_FOUND);
+        }
         var authenticationId = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        if (!notebookOptional.get().getUser().getId().equals(authenticationId)) {
+        if (!jobOptional.get().getUserId().equals(authenticationId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
-        var file = notebookService.finalizeNotebook(notebookOptional.get(), workTypeWeights);
-        if (file != null) {
-
-            var headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", "caderneta.xlsx");
+        return ResponseEntity.ok(jobOptional.get());
+    }
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(file);
+    @GetMapping("/finalize/jobs/{jobId}/download")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    public ResponseEntity<Object> downloadFinalizeJob(@PathVariable(value = "jobId") UUID jobId) {
+        var jobOptional = exportJobService.findJobById(jobId);
+        if (jobOptional.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(EXPORT_JOB_NOT_FOUND);
         }
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Caderneta não encontrada!");
+        var authenticationId = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        if (!jobOptional.get().getUserId().equals(authenticationId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (jobOptional.get().getStatus() != JobStatusEnum.DONE) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(jobOptional.get());
+        }
+        if (!Files.isRegularFile(jobOptional.get().getFile())) { //The temporary directory was cleaned under the job
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(EXPORT_JOB_NOT_FOUND);
+        }
+
+        var headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentDispositionFormData("attachment", "caderneta.xlsx");
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(new FileSystemResource(jobOptional.get().getFile()));
     }
 
     //FINALIZATION
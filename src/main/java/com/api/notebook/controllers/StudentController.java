@@ -2,20 +2,20 @@ package com.api.notebook.controllers;
 
 import com.api.notebook.models.dtos.StudentDto;
 import com.api.notebook.models.entities.StudentEntity;
+import com.api.notebook.services.EntityStreamService;
 import com.api.notebook.services.NotebookService;
 import com.api.notebook.services.StudentService;
-import com.api.notebook.utils.StudentComparator;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.BeanUtils;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -25,6 +25,7 @@ public class StudentController {
 
     private final StudentService studentService;
     private final NotebookService notebookService;
+    private final EntityStreamService entityStreamService;
 
     @PostMapping("/create") //POST endpoint to create a student entity
     @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
@@ -34,47 +35,18 @@ public class StudentController {
         var studentEntity = new StudentEntity();
         BeanUtils.copyProperties(studentDto, studentEntity);
 
-        var allStudentsByClasse = studentService.findAllStudentsByClasse(studentDto.getClasse());
-
-        if (!studentDto.getIsOrder()) {
-            var studentEntity1 = allStudentsByClasse.get(allStudentsByClasse.size() - 1);
-            studentEntity.setNumber(studentEntity1.getNumber() + 1);
-
-            studentService.saveStudent(studentEntity);
-            return ResponseEntity.status(HttpStatus.CREATED).body("Aluno criado com sucesso!");
-        }
-
-        List<StudentEntity> allStudents = new ArrayList<>();
-        List<StudentEntity> notOrderStudents = new ArrayList<>();
-
-        allStudents.add(studentEntity);
-        allStudentsByClasse.forEach((element) -> {
-            if (element.getIsOrder()) { allStudents.add(element); }
-            else notOrderStudents.add(element);
-        });
-        allStudents.sort(new StudentComparator());
-        allStudents.addAll(notOrderStudents);
-
-        var newStudentIndex = allStudents.indexOf(studentEntity);
-        for (int x = newStudentIndex; x < allStudents.size(); x++) {
-            var studentEntity1 = allStudents.get(x);
-            if (studentEntity1 == null) continue;
-
-            studentEntity1.setNumber(x + 1);
-            studentService.saveStudent(studentEntity1);
-        }
+        studentService.createStudent(studentEntity);
+        notebookService.touchNotebooksByClasse(studentEntity.getClasse());
 
         return ResponseEntity.status(HttpStatus.CREATED).body("Aluno criado com sucesso!");
     }
 
-    @GetMapping("/all") //GET endpoint to get all students
+    @GetMapping("/all") //GET endpoint to stream all students, one JSON per line
     @PreAuthorize("hasRole('ROLE_ADM')")
-    public ResponseEntity<Object> getAllStudents() {
-        var students = studentService.findAllStudents();
-        if (students.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
-        return ResponseEntity.ok(students);
+    public ResponseEntity<StreamingResponseBody> getAllStudents() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(outputStream -> entityStreamService.writeNdjson(studentService::streamAllStudents, outputStream));
     }
 
     @GetMapping("/all/{notebookId}") //GET endpoint to get all students
@@ -86,7 +58,7 @@ public class StudentController {
         if (optionalNotebook.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
-        return ResponseEntity.ok(studentService.findAllStudentsByClasse(optionalNotebook.get().getClasse()));
+        return ResponseEntity.ok(studentService.findRosterByNotebookId(notebookId));
     }
 
 
@@ -103,16 +75,8 @@ public class StudentController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Aluno não encontrado!");
         }
 
-        var allByClasse = studentService.findAllStudentsByClasse(studentOptional.get().getClasse());
-        studentService.deleteStudentById(studentOptional.get().getId());
-
-        for (int x = allByClasse.indexOf(studentOptional.get()) + 1; x < allByClasse.size(); x++) {
-            var studentEntity1 = allByClasse.get(x);
-            if (studentEntity1 == null) continue;
-
-            studentEntity1.setNumber(x);
-            studentService.saveStudent(studentEntity1);
-        }
+        studentService.deleteStudent(studentOptional.get());
+        notebookService.touchNotebooksByClasse(studentOptional.get().getClasse());
 
         return ResponseEntity.ok("Aluno deletado com sucesso!");
     }
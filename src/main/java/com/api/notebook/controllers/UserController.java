@@ -9,6 +9,7 @@ import com.api.notebook.models.dtos.UserWithoutPasswordDto;
 import com.api.notebook.models.entities.UserEntity;
 import com.api.notebook.models.entities.VCodeEntity;
 import com.api.notebook.producers.MailProducer;
+import com.api.notebook.services.EntityStreamService;
 import com.api.notebook.services.JwtService;
 import com.api.notebook.services.UserService;
 import com.api.notebook.services.VCodeService;
@@ -19,11 +20,13 @@ import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.BeanUtils;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -37,6 +40,7 @@ public class UserController {
     private final JwtService jwtService;
     private final VCodeService vCodeService;
     private final MailProducer mailProducer;
+    private final EntityStreamService entityStreamService;
 
 
 
@@ -78,10 +82,12 @@ public class UserController {
 
     //READ
 
-    @GetMapping("/all") //GET endpoint to get all teachers
+    @GetMapping("/all") //GET endpoint to stream all teachers, one JSON per line
     @PreAuthorize("hasRole('ROLE_ADM')")
-    public ResponseEntity<Object> getAllUsers() {
-        return ResponseEntity.ok(userService.findAllUsers());
+    public ResponseEntity<StreamingResponseBody> getAllUsers() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(outputStream -> entityStreamService.writeNdjson(userService::streamAllUsers, outputStream));
     }
 
     @GetMapping("/teachers")
@@ -200,6 +206,7 @@ public class UserController {
 
         userOptional.get().setPassword(newPassword);
         userService.createUser(userOptional.get());
+        jwtService.revokeTokens(teacherId);
 
         vCodeService.deleteById(vCodeOptional.get().getId());
 
@@ -277,6 +284,7 @@ public class UserController {
         }
 
         userService.deleteUserById(teacherId);
+        jwtService.revokeTokens(teacherId);
         vCodeService.deleteById(vCodeOptional.get().getId());
 
         return ResponseEntity.ok("Conta deletada com sucesso!");
@@ -314,6 +322,7 @@ public class UserController {
         userOptional.get().setRole(RoleEnum.ROLE_TCHR);
         userOptional.get().setVerified(true);
         userService.user(userOptional.get());
+        jwtService.revokeTokens(teacherId); //Earlier tokens claim the account unverified
 
         vCodeService.deleteById(verificationCodeOptional.get().getId());
 
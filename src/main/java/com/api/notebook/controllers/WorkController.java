@@ -1,22 +1,24 @@
 package com.api.notebook.controllers;
 
-import com.api.notebook.enums.RoleEnum;
 import com.api.notebook.models.dtos.WorkDto;
 import com.api.notebook.models.entities.WorkEntity;
+import com.api.notebook.services.EntityStreamService;
 import com.api.notebook.services.NotebookService;
 import com.api.notebook.services.WorkService;
+import com.api.notebook.utils.ScrollUtils;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.BeanUtils;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
@@ -29,6 +31,10 @@ public class WorkController {
 
     private final WorkService workService;
     private final NotebookService notebookService;
+    private final EntityStreamService entityStreamService;
+
+    @Value("${pagination.page-size}")
+    private int pageSize;
 
     @PostMapping("/create") //POST endpoint to create a work entity
     @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
@@ -41,87 +47,77 @@ public class WorkController {
         }
         notebookService.setWorkToNotebook(notebookId, workEntity);
         workService.saveWork(workEntity);
+        notebookService.touchNotebookByWork(notebookId, workEntity.getId(), 0);
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
-    @GetMapping("/all") //GET endpoint to get all works
+    @GetMapping("/all") //GET endpoint to stream all works, one JSON per line
     @PreAuthorize("hasRole('ROLE_ADM')")
-    public ResponseEntity<Object> getAllWorks() {
-        var works = workService.findAllWorks();
-        if (works.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
-        return ResponseEntity.ok(works);
+    public ResponseEntity<StreamingResponseBody> getAllWorks() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(outputStream -> entityStreamService.writeNdjson(workService::streamAllWorks, outputStream));
     }
 
-    @GetMapping("/all/{notebookId}") //GET endpoint to get all works
+    @GetMapping("/all/{notebookId}") //GET endpoint to get the notebook works one slice at a time
     @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
     public ResponseEntity<Object> getAllWorksByNotebookId(
             @PathVariable(value = "notebookId") UUID notebookId,
-            @RequestParam(value = "pageNum", defaultValue = "0", required = false) String pageNum,
+            @RequestParam(value = "cursor", required = false) String cursor,
             @RequestParam(value = "direction", defaultValue = "desc", required = false) String direction,
-            @RequestParam(value = "sortBy", defaultValue = "status", required = false) String sortBy
+            @RequestParam(value = "sortBy", defaultValue = "deliveryDate", required = false) String sortBy
     ) {
-        var pageable = PageRequest.of(
-                Integer.parseInt(pageNum),
-                10,
-                Sort.Direction.fromString(direction),
-                sortBy
-        );
-        var notebookWorks = workService.findAllWorksByNotebookId(notebookId, pageable);
+        Sort sort;
+        KeysetScrollPosition position;
+        try {
+            sort = ScrollUtils.getSort(sortBy, direction, WorkService.SORT_FIELDS);
+            position = ScrollUtils.decodeCursor(cursor, sortBy, WorkService.SORT_FIELDS);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+        var notebookWorks = workService.findAllWorksByNotebookId(notebookId, sort, position, pageSize);
         if (notebookWorks.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
         }
-        return ResponseEntity.ok(notebookWorks);
+        return ResponseEntity.ok(ScrollUtils.toSlice(notebookWorks));
     }
 
     @GetMapping("/{workId}")
-    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and " +
+            "(hasRole('ROLE_ADM') or @notebookOwnershipService.isWorkOwner(#workId, principal))")
     public ResponseEntity<Object> getWorkById(@PathVariable(value = "workId") UUID workId) {
         var workOptional = workService.findWorkById(workId);
         if (workOptional.isPresent()) {
-            var authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (
-                    !workOptional.get().getNotebook().getUser().getId().equals(authentication.getPrincipal()) &&
-                    !authentication.getAuthorities().contains(new SimpleGrantedAuthority(RoleEnum.ROLE_ADM.name()))
-            ) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-            }
             return ResponseEntity.ok(workOptional.get());
         }
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Trabalho/Tarefa não encontrada!");
     }
 
     @PutMapping("/edit/{workId}")
-    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and @notebookOwnershipService.isWorkOwner(#workId, principal)")
     public ResponseEntity<Object> editWork(@PathVariable(value = "workId") UUID workId,
                                              @RequestBody @Valid WorkDto workDto) {
         var workOptional = workService.findWorkById(workId);
         if (workOptional.isPresent()) {
-            var authenticationId = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (workOptional.get().getNotebook().getUser().getId().equals(authenticationId)) {
-                var workEntity = new WorkEntity();
-                BeanUtils.copyProperties(workOptional.get(), workEntity);
-                BeanUtils.copyProperties(workDto, workEntity);
-                workService.saveWork(workEntity);
-                return ResponseEntity.ok().build();
-            }
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            var workEntity = new WorkEntity();
+            BeanUtils.copyProperties(workOptional.get(), workEntity);
+            BeanUtils.copyProperties(workDto, workEntity);
+            workService.saveWork(workEntity);
+            notebookService.touchNotebook(workEntity.getNotebook().getId());
+            return ResponseEntity.ok().build();
         }
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Trabalho/Tarefa não encontrada!");
     }
 
     @DeleteMapping("/delete/{workId}")
-    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM')")
+    @PreAuthorize("hasAnyRole('ROLE_TCHR', 'ROLE_ADM') and @notebookOwnershipService.isWorkOwner(#workId, principal)")
     public ResponseEntity<Object> deleteWork(@PathVariable(value = "workId") UUID workId) {
         var workOptional = workService.findWorkById(workId);
         if (workOptional.isPresent()) {
-            var authenticationId = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (workOptional.get().getNotebook().getUser().getId().equals(authenticationId)) {
-                workService.deleteWorkById(workId);
-                return ResponseEntity.ok().build();
-            }
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            var missingBefore = notebookService.countMissingWork(workId);
+            workService.deleteWorkById(workId);
+            notebookService.touchNotebookByWork(workOptional.get().getNotebook().getId(), workId, missingBefore);
+            return ResponseEntity.ok().build();
         }
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Trabalho/Tarefa não encontrada!");
     }
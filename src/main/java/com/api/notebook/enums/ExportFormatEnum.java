@@ -0,0 +1,8 @@
+package com.api.notebook.enums;
+
+public enum ExportFormatEnum {
+
+    CSV,
+    NDJSON
+
+}
@@ -0,0 +1,10 @@
+package com.api.notebook.enums;
+
+public enum JobStatusEnum {
+
+    PENDING,
+    RUNNING,
+    DONE,
+    FAILED
+
+}
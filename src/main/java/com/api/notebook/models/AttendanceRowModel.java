@@ -0,0 +1,22 @@
+package com.api.notebook.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+@AllArgsConstructor
+@Data
+@NoArgsConstructor
+public class AttendanceRowModel {
+
+    private UUID lessonId;
+    private LocalDate lessonDate;
+    private UUID attendanceId;
+    private Integer studentNumber;
+    private String studentName;
+    private Boolean present;
+
+}
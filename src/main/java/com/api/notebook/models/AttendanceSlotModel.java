@@ -0,0 +1,20 @@
+package com.api.notebook.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+@AllArgsConstructor
+@Data
+@NoArgsConstructor
+public class AttendanceSlotModel {
+
+    private UUID lessonId;
+    private LocalDate lessonDate;
+    private UUID attendanceId;
+    private UUID[] presentStudentsIds;
+
+}
@@ -0,0 +1,33 @@
+package com.api.notebook.models;
+
+import com.api.notebook.enums.JobStatusEnum;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+public class ExportJobModel {
+
+    private UUID id;
+    private UUID notebookId;
+
+    @JsonIgnore
+    private UUID userId;
+
+    //Updated by the export worker and read by the request threads
+    private volatile JobStatusEnum status;
+
+    //Why the job failed, null while it hasn't
+    private volatile String errorMessage;
+
+    private LocalDateTime createDate;
+
+    @JsonIgnore
+    private volatile Path file;
+
+}
@@ -0,0 +1,24 @@
+package com.api.notebook.models;
+
+import com.api.notebook.enums.WorksEnum;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+@AllArgsConstructor
+@Data
+@NoArgsConstructor
+public class GradeRowModel {
+
+    private Integer studentNumber;
+    private String studentName;
+    private UUID workId;
+    private String workTitle;
+    private WorksEnum workType;
+    private LocalDate deliveryDate;
+    private Double grade;
+
+}
@@ -0,0 +1,22 @@
+package com.api.notebook.models;
+
+import com.api.notebook.enums.WorksEnum;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@AllArgsConstructor
+@Data
+@NoArgsConstructor
+public class GradeSumModel {
+
+    private UUID studentId;
+    private Integer studentNumber;
+    private String studentName;
+    private WorksEnum workType;
+    private Double gradesSum;
+    private Long gradesCount;
+
+}
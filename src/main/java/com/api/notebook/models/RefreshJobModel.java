@@ -0,0 +1,29 @@
+package com.api.notebook.models;
+
+import com.api.notebook.enums.JobStatusEnum;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+public class RefreshJobModel {
+
+    private UUID id;
+
+    //Updated by the refresh coordinator and read by the request threads
+    private volatile JobStatusEnum status;
+    private volatile long totalNotebooks;
+    private volatile long refreshedNotebooks;
+
+    //Every stale notebook up to this id is refreshed, a new job can resume after it
+    private volatile UUID resumeAfter;
+
+    //Why the job failed, null while it hasn't
+    private volatile String errorMessage;
+
+    private LocalDateTime createDate;
+
+}
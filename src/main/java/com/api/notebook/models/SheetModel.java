@@ -0,0 +1,46 @@
+package com.api.notebook.models;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Setter;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+//Layout of a sheet, computed apart from the workbook and rendered later
+@Data
+public class SheetModel {
+
+    private final String name;
+
+    //Cells by row and column, null when the cell is not created
+    private final List<String[]> headerRows = new ArrayList<>();
+
+    //Body rows are built one at a time while rendering, only the rendered row is kept in memory
+    @Setter(AccessLevel.NONE)
+    private int rowsCount;
+
+    @Setter(AccessLevel.NONE)
+    private IntFunction<String[]> rowBuilder = index -> new String[0];
+
+    private final Map<Integer, Integer> columnWidths = new LinkedHashMap<>();
+    private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+
+    public void setRows(int rowsCount, IntFunction<String[]> rowBuilder) {
+        this.rowsCount = rowsCount;
+        this.rowBuilder = rowBuilder;
+    }
+
+    public void setColumnWidth(int column, int width) {
+        columnWidths.put(column, width);
+    }
+
+    public void addMergedRegion(CellRangeAddress mergedRegion) {
+        mergedRegions.add(mergedRegion);
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.api.notebook.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@Data
+@NoArgsConstructor
+public class SliceModel<T> {
+
+    private List<T> content;
+    private boolean hasNext;
+    private String nextCursor; //Opaque, send it back to get the next slice
+
+}
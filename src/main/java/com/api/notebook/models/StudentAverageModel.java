@@ -0,0 +1,19 @@
+package com.api.notebook.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@AllArgsConstructor
+@Data
+@NoArgsConstructor
+public class StudentAverageModel {
+
+    private Integer attendanceNumber;
+    private String name;
+    private Map<String, Double> averages;
+    private Double finalGrade;
+
+}
@@ -1,6 +1,7 @@
 package com.api.notebook.models.entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -22,18 +23,21 @@ public class AttendanceEntity {
     @JoinColumn(name = "lesson_id")
     private LessonEntity lesson;
 
-    @ManyToMany
-    @JoinTable(
-            name = "attendances_present_students",
-            joinColumns = {@JoinColumn(name = "attendance_id")},
-            inverseJoinColumns = {@JoinColumn(name = "student_id")})
+    //Student ids in array columns, one row per attendance instead of one join row per student
+    //Existing attendances get them from db/attendances-students-ids.sql
+    @Column(name = "present_students_ids")
+    private UUID[] presentStudentsIds;
+
+    @Column(name = "absent_students_ids")
+    private UUID[] absentStudentsIds;
+
+    //Resolved from the ids only where the students are shown, see AttendanceService
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<StudentEntity> presentStudents;
 
-    @ManyToMany
-    @JoinTable(
-            name = "attendances_absent_students",
-            joinColumns = {@JoinColumn(name = "attendance_id")},
-            inverseJoinColumns = {@JoinColumn(name = "student_id")})
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<StudentEntity> absentStudents;
 
 }
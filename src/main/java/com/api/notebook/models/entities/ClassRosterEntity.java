@@ -0,0 +1,21 @@
+package com.api.notebook.models.entities;
+
+import com.api.notebook.enums.ClassEnum;
+import jakarta.persistence.*;
+import lombok.Data;
+
+@Entity
+@Data
+@Table(name = "class_rosters")
+public class ClassRosterEntity {
+
+    @Id
+    @Column(name = "classe")
+    @Enumerated(value = EnumType.STRING)
+    private ClassEnum classe;
+
+    //Bumped on every student added to or removed from the class
+    @Column(name = "version")
+    private Long version = 0L;
+
+}
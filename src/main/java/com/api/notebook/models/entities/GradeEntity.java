@@ -8,7 +8,9 @@ import java.util.UUID;
 
 @Entity
 @Data
-@Table(name = "grades")
+@Table(name = "grades", uniqueConstraints = {
+        @UniqueConstraint(name = "grades_work_id_student_id_key", columnNames = {"work_id", "student_id"}) //Existing databases get it from db/grades-work-student-unique.sql
+})
 public class GradeEntity {
 
     @Id
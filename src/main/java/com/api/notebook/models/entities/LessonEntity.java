@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Formula;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -34,7 +36,13 @@ public class LessonEntity {
     @Column(name = "date")
     private LocalDate date;
 
+    //Date the listing sorts by, lessons without one come as the oldest
+    @JsonIgnore
+    @Formula("COALESCE(date, DATE '0001-01-01')")
+    private LocalDate sortDate;
+
     @ManyToMany
+    @BatchSize(size = 100) //Lessons listed together load their codes together
     @JoinTable(
             name = "lessons_bncc_codes",
             joinColumns = {@JoinColumn(name = "lesson_id")},
@@ -51,9 +59,12 @@ public class LessonEntity {
     @OneToMany(mappedBy = "lesson", cascade = {CascadeType.ALL})
     private List<AttendanceEntity> attendances;
 
+    @Formula("(SELECT COUNT(*) FROM attendances a WHERE a.lesson_id = id)")
+    private Integer attendancesQuantity;
+
     @JsonGetter(value = "attendances")
     public Integer getAttendancesQuantity() {
-        return attendances.size();
+        return attendancesQuantity;
     }
 
 }
@@ -8,13 +8,14 @@ import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Formula;
 
 import java.time.LocalDate;
 import java.util.*;
 
 @Entity
 @Data
-@Table(name = "notebooks")
+@Table(name = "notebooks", indexes = {@Index(name = "notebooks_user_id_idx", columnList = "user_id")})
 public class NotebookEntity {
 
     @Id
@@ -44,11 +45,26 @@ public class NotebookEntity {
     @Column(name = "end_date")
     private LocalDate endDate;
 
+    //Bumped on every write that changes the finalized spreadsheet, only through NotebookRepository
+    @JsonIgnore
+    @Column(name = "data_version", updatable = false)
+    private Long dataVersion = 0L;
+
+    //Lessons without attendances and works missing grades, moved by each lesson or work write, recounted on roster changes
+    @JsonIgnore
+    @Column(name = "missing_lessons_count", updatable = false)
+    private Integer missingLessonsCount = 0;
+
+    @JsonIgnore
+    @Column(name = "missing_works_count", updatable = false)
+    private Integer missingWorksCount = 0;
+
     @ManyToOne
     @JsonIgnore
     @JoinColumn(name = "user_id")
     private UserEntity user;
 
+    //Class roster copied when the notebook is finalized, open notebooks read the students of their class
     @JsonIgnore
     @ManyToMany
     @JoinTable(
@@ -56,6 +72,16 @@ public class NotebookEntity {
             joinColumns = {@JoinColumn(name = "notebook_id")},
             inverseJoinColumns = {@JoinColumn(name = "student_id")}
     )
+    private List<StudentEntity> rosterSnapshot;
+
+    //Class roster version the notebook data was last refreshed for, the snapshot one once finalized
+    @JsonIgnore
+    @Column(name = "roster_version")
+    private Long rosterVersion;
+
+    //Roster resolved for the spreadsheet, see StudentRepository.findRosterByNotebookId
+    @JsonIgnore
+    @Transient
     private List<StudentEntity> students;
 
     @JsonIgnore
@@ -66,19 +92,33 @@ public class NotebookEntity {
     @OneToMany(mappedBy = "notebook", cascade = {CascadeType.ALL})
     private List<WorkEntity> works;
 
+    //Counts come from subqueries in the entity select, so the JSON never loads the collections
+    @Formula(
+            "(CASE WHEN status = 'OFF' " +
+            "THEN (SELECT COUNT(*) FROM notebooks_students ns WHERE ns.notebook_id = id) " +
+            "ELSE (SELECT COUNT(*) FROM students s WHERE s.classe = classe) END)"
+    )
+    private Integer studentsQuantity;
+
+    @Formula("(SELECT COUNT(*) FROM lessons l WHERE l.notebook_id = id)")
+    private Integer lessonsQuantity;
+
+    @Formula("(SELECT COUNT(*) FROM works w WHERE w.notebook_id = id)")
+    private Integer worksQuantity;
+
     @JsonGetter(value = "students")
     public Integer getStudentsQuantity() {
-        return students.size();
+        return studentsQuantity;
     }
 
     @JsonGetter(value = "lessons")
     public Integer getLessonsQuantity() {
-        return lessons.size();
+        return lessonsQuantity;
     }
 
     @JsonGetter(value = "works")
     public Integer getWorksQuantity() {
-        return works.size();
+        return worksQuantity;
     }
 
 }
@@ -32,17 +32,9 @@ public class StudentEntity {
     private ClassEnum classe;
 
     @JsonIgnore
-    @ManyToMany(mappedBy = "students")
+    @ManyToMany(mappedBy = "rosterSnapshot")
     private List<NotebookEntity> notebooks;
 
-    @JsonIgnore
-    @ManyToMany(mappedBy = "presentStudents")
-    private List<AttendanceEntity> presences;
-
-    @JsonIgnore
-    @ManyToMany(mappedBy = "absentStudents")
-    private List<AttendanceEntity> absences;
-
     @JsonIgnore
     @OneToMany(mappedBy = "student")
     private List<GradeEntity> grades;
@@ -0,0 +1,22 @@
+package com.api.notebook.models.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Data
+@Table(name = "token_revocations")
+public class TokenRevocationEntity {
+
+    //No foreign key, the revocation outlives a deleted user until their tokens expire
+    @Id
+    @Column(name = "user_id")
+    private UUID userId;
+
+    @Column(name = "revoked_at")
+    private Instant revokedAt;
+
+}
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Formula;
 
 import java.util.List;
 import java.util.UUID;
@@ -46,9 +47,12 @@ public class UserEntity {
 
     public boolean isVerified() { return verified; }
 
+    @Formula("(SELECT COUNT(*) FROM notebooks n WHERE n.user_id = id)")
+    private Integer notebooksQuantity;
+
     @JsonGetter(value = "notebooks")
     public Integer getNotebooksQuantity() {
-        return notebooks.size();
+        return notebooksQuantity;
     }
 
 }
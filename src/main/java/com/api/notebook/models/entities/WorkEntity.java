@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Formula;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -36,6 +37,11 @@ public class WorkEntity {
     @Column(name = "delivery_date")
     private LocalDate deliveryDate;
 
+    //Delivery date the listing sorts by, works without one come as the oldest
+    @JsonIgnore
+    @Formula("COALESCE(delivery_date, DATE '0001-01-01')")
+    private LocalDate sortDeliveryDate;
+
     @ManyToOne
     @JsonIgnore
     @JoinColumn(name = "notebook_id")
@@ -45,9 +51,12 @@ public class WorkEntity {
     @OneToMany(mappedBy = "work", cascade = {CascadeType.ALL})
     private List<GradeEntity> grades;
 
+    @Formula("(SELECT COUNT(*) FROM grades g WHERE g.work_id = id)")
+    private Integer gradesQuantity;
+
     @JsonGetter(value = "grades")
     public Integer getGradesQuantity() {
-        return grades.size();
+        return gradesQuantity;
     }
 
 }
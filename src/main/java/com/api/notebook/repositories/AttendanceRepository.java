@@ -1,15 +1,40 @@
 package com.api.notebook.repositories;
 
+import com.api.notebook.models.AttendanceSlotModel;
 import com.api.notebook.models.entities.AttendanceEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface AttendanceRepository extends JpaRepository<AttendanceEntity, UUID> {
 
     List<AttendanceEntity> findByLessonId(UUID lessonId);
 
+    //Attendance slots of the notebook in the export order, the rows per student are expanded from the ids
+    @Query(
+            "SELECT new com.api.notebook.models.AttendanceSlotModel(l.id, l.date, a.id, a.presentStudentsIds) " +
+            "FROM AttendanceEntity a JOIN a.lesson l " +
+            "WHERE l.notebook.id = :notebookId " +
+            "ORDER BY l.date, l.id, a.id"
+    )
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<AttendanceSlotModel> streamSlotsByNotebookId(@Param(value = "notebookId") UUID notebookId);
+
+    //Eager parents are fetched in the same row, so streaming doesn't run a query per attendance
+    @Query(
+            "SELECT a FROM AttendanceEntity a " +
+            "LEFT JOIN FETCH a.lesson l LEFT JOIN FETCH l.notebook n LEFT JOIN FETCH n.user"
+    )
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<AttendanceEntity> streamAll();
+
 }
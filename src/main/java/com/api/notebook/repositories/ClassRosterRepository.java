@@ -0,0 +1,20 @@
+package com.api.notebook.repositories;
+
+import com.api.notebook.enums.ClassEnum;
+import com.api.notebook.models.entities.ClassRosterEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ClassRosterRepository extends JpaRepository<ClassRosterEntity, ClassEnum> {
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ClassRosterEntity r SET r.version = r.version + 1 WHERE r.classe = :classe")
+    int incrementVersion(@Param(value = "classe") ClassEnum classe);
+
+}
@@ -1,15 +1,46 @@
 package com.api.notebook.repositories;
 
+import com.api.notebook.models.GradeRowModel;
 import com.api.notebook.models.entities.GradeEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface GradeRepository extends JpaRepository<GradeEntity, UUID> {
 
     List<GradeEntity> findByWorkId(UUID workId);
 
+    List<GradeEntity> findByWorkIdAndStudentIdIn(UUID workId, Collection<UUID> studentIds);
+
+    //One row per student and work of the notebook, grade is null when the student has none
+    @Query(
+            "SELECT new com.api.notebook.models.GradeRowModel(" +
+            "s.number, s.name, w.id, w.title, w.type, w.deliveryDate, g.grade) " +
+            "FROM NotebookEntity n JOIN StudentEntity s ON " + NotebookRepository.ROSTER_CONDITION + " " +
+            "JOIN n.works w " +
+            "LEFT JOIN GradeEntity g ON g.work = w AND g.student = s " +
+            "WHERE n.id = :notebookId " +
+            "ORDER BY s.number, w.deliveryDate, w.id"
+    )
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<GradeRowModel> streamRowsByNotebookId(@Param(value = "notebookId") UUID notebookId);
+
+    //Eager parents are fetched in the same row, so streaming doesn't run a query per grade
+    @Query(
+            "SELECT g FROM GradeEntity g LEFT JOIN FETCH g.student " +
+            "LEFT JOIN FETCH g.work w LEFT JOIN FETCH w.notebook n LEFT JOIN FETCH n.user"
+    )
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<GradeEntity> streamAll();
+
 }
@@ -1,19 +1,30 @@
 package com.api.notebook.repositories;
 
 import com.api.notebook.models.entities.LessonEntity;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
-public interface LessonRepository extends JpaRepository<LessonEntity, UUID> {
+public interface LessonRepository extends JpaRepository<LessonEntity, UUID>, JpaSpecificationExecutor<LessonEntity> {
 
-    Page<LessonEntity> findByNotebookId(UUID notebookId, Pageable pageable);
+    boolean existsByIdAndNotebookUserId(UUID lessonId, UUID userId);
+
+    @Query("SELECT DISTINCT l FROM LessonEntity l LEFT JOIN FETCH l.attendances WHERE l.notebook.id = :notebookId")
+    List<LessonEntity> findWithAttendancesByNotebookId(@Param(value = "notebookId") UUID notebookId);
+
+    //Eager parents are fetched in the same row, so streaming doesn't run a query per lesson
+    @Query("SELECT l FROM LessonEntity l LEFT JOIN FETCH l.notebook n LEFT JOIN FETCH n.user")
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<LessonEntity> streamAll();
 
 }
@@ -1,18 +1,217 @@
 package com.api.notebook.repositories;
 
+import com.api.notebook.enums.BimesterEnum;
+import com.api.notebook.enums.ClassEnum;
+import com.api.notebook.enums.SubjectEnum;
+import com.api.notebook.models.GradeSumModel;
+import com.api.notebook.models.MissingTaskLessonModel;
+import com.api.notebook.models.MissingTaskWorkModel;
 import com.api.notebook.models.entities.NotebookEntity;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface NotebookRepository extends JpaRepository<NotebookEntity, UUID> {
+public interface NotebookRepository extends JpaRepository<NotebookEntity, UUID>, JpaSpecificationExecutor<NotebookEntity> {
+
+    //Student s is in notebook n: the class roster while it is open, the snapshot taken at finalization once closed
+    String ROSTER_CONDITION =
+            "((n.status = com.api.notebook.enums.StatusEnum.OFF AND s MEMBER OF n.rosterSnapshot) OR " +
+            "(n.status <> com.api.notebook.enums.StatusEnum.OFF AND s.classe = n.classe))";
+
+    //Number of students in notebook n
+    String ROSTER_SIZE = "(SELECT COUNT(s) FROM StudentEntity s WHERE " + ROSTER_CONDITION + ")";
+
+    //Notebook n is open and its data was refreshed for an older version of its class roster
+    String STALE_ROSTER_CONDITION =
+            "(n.status <> com.api.notebook.enums.StatusEnum.OFF AND (n.rosterVersion IS NULL OR " +
+            "n.rosterVersion <> COALESCE((SELECT r.version FROM ClassRosterEntity r WHERE r.classe = n.classe), 0)))";
+
+    //Lesson l has no attendance
+    String LESSON_MISSING_ATTENDANCES = "NOT EXISTS (SELECT a.id FROM AttendanceEntity a WHERE a.lesson = l)";
+
+    //Work w of notebook n has fewer grades than students in the notebook
+    String WORK_MISSING_GRADES = "(SELECT COUNT(g) FROM GradeEntity g WHERE g.work = w) < " + ROSTER_SIZE;
 
-    Page<NotebookEntity> findByUserId(UUID userId, Pageable pageable);
     List<NotebookEntity> findByUserId(UUID userId);
 
+    @Query("SELECT n.user.id FROM NotebookEntity n WHERE n.id = :notebookId")
+    Optional<UUID> findUserIdById(@Param(value = "notebookId") UUID notebookId);
+
+    @Query(
+            "SELECT n.id FROM NotebookEntity n WHERE " +
+            "(:teacherId IS NULL OR n.user.id = :teacherId) AND " +
+            "(:classe IS NULL OR n.classe = :classe) AND " +
+            "(:subject IS NULL OR n.subject = :subject) AND " +
+            "(:bimester IS NULL OR n.bimester = :bimester) " +
+            "ORDER BY n.classe, n.subject, n.bimester, n.createDate"
+    )
+    List<UUID> findIdsByFilters(
+            @Param(value = "teacherId") UUID teacherId,
+            @Param(value = "classe") ClassEnum classe,
+            @Param(value = "subject") SubjectEnum subject,
+            @Param(value = "bimester") BimesterEnum bimester
+    );
+
+    //Export fetch plan, each query fetches one collection of the notebook
+    @Query("SELECT n FROM NotebookEntity n LEFT JOIN FETCH n.user WHERE n.id = :notebookId")
+    Optional<NotebookEntity> findWithUserById(@Param(value = "notebookId") UUID notebookId);
+
+    @Query("SELECT n FROM NotebookEntity n LEFT JOIN FETCH n.lessons WHERE n.id = :notebookId")
+    Optional<NotebookEntity> findWithLessonsById(@Param(value = "notebookId") UUID notebookId);
+
+    @Query("SELECT n FROM NotebookEntity n LEFT JOIN FETCH n.works WHERE n.id = :notebookId")
+    Optional<NotebookEntity> findWithWorksById(@Param(value = "notebookId") UUID notebookId);
+
+    //Open notebooks of the class, closed ones keep their roster snapshot whatever the class changes
+    @Query(
+            "SELECT n.id FROM NotebookEntity n WHERE n.classe = :classe AND " +
+            "n.status <> com.api.notebook.enums.StatusEnum.OFF"
+    )
+    List<UUID> findOpenIdsByClasse(@Param(value = "classe") ClassEnum classe);
+
+    //Next stale roster notebooks in id order, the last id of a chunk is where the next one starts
+    @Query(
+            "SELECT n.id FROM NotebookEntity n WHERE " + STALE_ROSTER_CONDITION + " AND " +
+            "(:afterId IS NULL OR n.id > :afterId) ORDER BY n.id"
+    )
+    List<UUID> findIdsWithStaleRosterAfter(@Param(value = "afterId") UUID afterId, Pageable pageable);
+
+    @Query(
+            "SELECT COUNT(n) FROM NotebookEntity n WHERE " + STALE_ROSTER_CONDITION + " AND " +
+            "(:afterId IS NULL OR n.id > :afterId)"
+    )
+    long countWithStaleRosterAfter(@Param(value = "afterId") UUID afterId);
+
+    @Transactional
+    @Modifying
+    @Query(
+            "UPDATE NotebookEntity n SET n.rosterVersion = " +
+            "COALESCE((SELECT r.version FROM ClassRosterEntity r WHERE r.classe = n.classe), 0) " +
+            "WHERE n.id IN :notebookIds AND n.status <> com.api.notebook.enums.StatusEnum.OFF"
+    )
+    void updateRosterVersion(@Param(value = "notebookIds") List<UUID> notebookIds);
+
+    //Grades sum and count per roster student and work type, types without grades count zero
+    @Query(
+            "SELECT new com.api.notebook.models.GradeSumModel(" +
+            "s.id, s.number, s.name, w.type, SUM(g.grade), COUNT(g.grade)) " +
+            "FROM NotebookEntity n JOIN StudentEntity s ON " + ROSTER_CONDITION + " " +
+            "LEFT JOIN n.works w LEFT JOIN GradeEntity g ON g.work = w AND g.student = s " +
+            "WHERE n.id = :notebookId " +
+            "GROUP BY s.id, s.number, s.name, w.type " +
+            "ORDER BY s.number, s.id"
+    )
+    List<GradeSumModel> sumGradesByStudentAndWorkType(@Param(value = "notebookId") UUID notebookId);
+
+    //Notebooks of the teacher whose counters have missing tasks, unknown counters included
+    @Query(
+            "SELECT n.id FROM NotebookEntity n WHERE n.user.id = :teacherId AND " +
+            "(COALESCE(n.missingLessonsCount, 1) > 0 OR COALESCE(n.missingWorksCount, 1) > 0)"
+    )
+    List<UUID> findIdsWithMissingTasksByUserId(@Param(value = "teacherId") UUID teacherId);
+
+    //Lessons without any attendance in the given notebooks
+    @Query(
+            "SELECT new com.api.notebook.models.MissingTaskLessonModel(l.id, l.title, n.id) " +
+            "FROM LessonEntity l JOIN l.notebook n WHERE n.id IN :notebookIds AND " + LESSON_MISSING_ATTENDANCES + " " +
+            "ORDER BY n.createDate, n.id, l.date"
+    )
+    List<MissingTaskLessonModel> findMissingTaskLessons(@Param(value = "notebookIds") List<UUID> notebookIds);
+
+    //Works with fewer grades than students in the notebook, in the given notebooks
+    @Query(
+            "SELECT new com.api.notebook.models.MissingTaskWorkModel(w.id, w.title, n.id) " +
+            "FROM WorkEntity w JOIN w.notebook n WHERE n.id IN :notebookIds AND " + WORK_MISSING_GRADES + " " +
+            "ORDER BY n.createDate, n.id, w.deliveryDate"
+    )
+    List<MissingTaskWorkModel> findMissingTaskWorks(@Param(value = "notebookIds") List<UUID> notebookIds);
+
+    //1 if the lesson is a missing task, read before a write so the counter can move by the lesson change alone
+    @Query("SELECT COUNT(l) FROM LessonEntity l WHERE l.id = :lessonId AND " + LESSON_MISSING_ATTENDANCES)
+    long countMissingLesson(@Param(value = "lessonId") UUID lessonId);
+
+    @Query("SELECT COUNT(w) FROM WorkEntity w JOIN w.notebook n WHERE w.id = :workId AND " + WORK_MISSING_GRADES)
+    long countMissingWork(@Param(value = "workId") UUID workId);
+
+    //Touch the notebook after a write to one of its lessons, the counter moves from what the lesson was to what it is
+    @Transactional
+    @Modifying
+    @Query(
+            "UPDATE NotebookEntity n SET n.dataVersion = COALESCE(n.dataVersion, 0) + 1, " +
+            "n.missingLessonsCount = CAST(n.missingLessonsCount - :missingBefore + " +
+            "(SELECT COUNT(l) FROM LessonEntity l WHERE l.id = :lessonId AND l.notebook = n AND " +
+            LESSON_MISSING_ATTENDANCES + ") AS Integer) " +
+            "WHERE n.id = :notebookId"
+    )
+    void touchByLesson(
+            @Param(value = "notebookId") UUID notebookId,
+            @Param(value = "lessonId") UUID lessonId,
+            @Param(value = "missingBefore") long missingBefore
+    );
+
+    @Transactional
+    @Modifying
+    @Query(
+            "UPDATE NotebookEntity n SET n.dataVersion = COALESCE(n.dataVersion, 0) + 1, " +
+            "n.missingWorksCount = CAST(n.missingWorksCount - :missingBefore + " +
+            "(SELECT COUNT(w) FROM WorkEntity w WHERE w.id = :workId AND w.notebook = n AND " +
+            WORK_MISSING_GRADES + ") AS Integer) " +
+            "WHERE n.id = :notebookId"
+    )
+    void touchByWork(
+            @Param(value = "notebookId") UUID notebookId,
+            @Param(value = "workId") UUID workId,
+            @Param(value = "missingBefore") long missingBefore
+    );
+
+    //Recount the missing tasks counters of the given notebooks, same conditions as the queries above
+    @Transactional
+    @Modifying
+    @Query(
+            "UPDATE NotebookEntity n SET " +
+            "n.missingLessonsCount = (SELECT COUNT(l) FROM LessonEntity l WHERE l.notebook = n AND " +
+            LESSON_MISSING_ATTENDANCES + "), " +
+            "n.missingWorksCount = (SELECT COUNT(w) FROM WorkEntity w WHERE w.notebook = n AND " +
+            WORK_MISSING_GRADES + ") " +
+            "WHERE n.id IN :notebookIds"
+    )
+    void refreshMissingTaskCounters(@Param(value = "notebookIds") List<UUID> notebookIds);
+
+    //A roster change moves the students count of every work, lessons don't depend on it
+    @Transactional
+    @Modifying
+    @Query(
+            "UPDATE NotebookEntity n SET " +
+            "n.missingWorksCount = (SELECT COUNT(w) FROM WorkEntity w WHERE w.notebook = n AND " +
+            WORK_MISSING_GRADES + ") " +
+            "WHERE n.id IN :notebookIds"
+    )
+    void refreshMissingWorksCounters(@Param(value = "notebookIds") List<UUID> notebookIds);
+
+    //Notebooks whose stored counters are unknown or differ from a recount
+    @Query(
+            "SELECT n.id FROM NotebookEntity n WHERE " +
+            "n.missingLessonsCount IS NULL OR n.missingWorksCount IS NULL OR " +
+            "n.missingLessonsCount <> (SELECT COUNT(l) FROM LessonEntity l WHERE l.notebook = n AND " +
+            LESSON_MISSING_ATTENDANCES + ") OR " +
+            "n.missingWorksCount <> (SELECT COUNT(w) FROM WorkEntity w WHERE w.notebook = n AND " +
+            WORK_MISSING_GRADES + ")"
+    )
+    List<UUID> findIdsWithStaleMissingTaskCounters();
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE NotebookEntity n SET n.dataVersion = COALESCE(n.dataVersion, 0) + 1 WHERE n.id IN :notebookIds")
+    void incrementDataVersion(@Param(value = "notebookIds") List<UUID> notebookIds);
+
 }
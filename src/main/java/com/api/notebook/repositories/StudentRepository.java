@@ -2,15 +2,51 @@ package com.api.notebook.repositories;
 
 import com.api.notebook.enums.ClassEnum;
 import com.api.notebook.models.entities.StudentEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface StudentRepository extends JpaRepository<StudentEntity, UUID> {
 
     List<StudentEntity> findAllByClasse(ClassEnum classEnum);
 
+    @Query(
+            "SELECT s FROM NotebookEntity n JOIN StudentEntity s ON " + NotebookRepository.ROSTER_CONDITION + " " +
+            "WHERE n.id = :notebookId ORDER BY s.number, s.id"
+    )
+    List<StudentEntity> findRosterByNotebookId(@Param(value = "notebookId") UUID notebookId);
+
+    List<StudentEntity> findAllByClasseAndIsOrderTrue(ClassEnum classEnum);
+
+    @Query("SELECT COALESCE(MAX(s.number), 0) FROM StudentEntity s WHERE s.classe = :classe")
+    int findMaxNumberByClasse(@Param(value = "classe") ClassEnum classe);
+
+    //Move the numbers from the given one onwards in a single statement, offset is +1 or -1
+    @Transactional
+    @Modifying
+    @Query(
+            "UPDATE StudentEntity s SET s.number = s.number + :offset " +
+            "WHERE s.classe = :classe AND s.number >= :fromNumber"
+    )
+    void shiftNumbers(
+            @Param(value = "classe") ClassEnum classe,
+            @Param(value = "fromNumber") int fromNumber,
+            @Param(value = "offset") int offset
+    );
+
+    @Query("SELECT s FROM StudentEntity s ORDER BY s.number")
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<StudentEntity> streamAll();
+
 }
@@ -0,0 +1,25 @@
+package com.api.notebook.repositories;
+
+import com.api.notebook.models.entities.TokenRevocationEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface TokenRevocationRepository extends JpaRepository<TokenRevocationEntity, UUID> {
+
+    List<TokenRevocationEntity> findByRevokedAtAfter(Instant revokedAt);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM TokenRevocationEntity r WHERE r.revokedAt < :revokedAt")
+    void deleteByRevokedAtBefore(@Param(value = "revokedAt") Instant revokedAt);
+
+}
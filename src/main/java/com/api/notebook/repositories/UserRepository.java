@@ -2,12 +2,17 @@ package com.api.notebook.repositories;
 
 import com.api.notebook.enums.RoleEnum;
 import com.api.notebook.models.entities.UserEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<UserEntity, UUID> {
@@ -16,4 +21,8 @@ public interface UserRepository extends JpaRepository<UserEntity, UUID> {
     boolean existsByEmail(String email);
     List<UserEntity> findAllByRole(RoleEnum role);
 
+    @Query("SELECT u FROM UserEntity u ORDER BY u.name")
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<UserEntity> streamAll();
+
 }
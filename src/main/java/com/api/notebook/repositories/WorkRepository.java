@@ -2,19 +2,33 @@ package com.api.notebook.repositories;
 
 import com.api.notebook.models.entities.LessonEntity;
 import com.api.notebook.models.entities.WorkEntity;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
-public interface WorkRepository extends JpaRepository<WorkEntity, UUID> {
+public interface WorkRepository extends JpaRepository<WorkEntity, UUID>, JpaSpecificationExecutor<WorkEntity> {
 
-    Page<WorkEntity> findByNotebookId(UUID notebookId, Pageable pageable);
+    boolean existsByIdAndNotebookUserId(UUID workId, UUID userId);
+
+    @Query(
+            "SELECT DISTINCT w FROM WorkEntity w LEFT JOIN FETCH w.grades g LEFT JOIN FETCH g.student " +
+            "WHERE w.notebook.id = :notebookId"
+    )
+    List<WorkEntity> findWithGradesByNotebookId(@Param(value = "notebookId") UUID notebookId);
+
+    //Eager parents are fetched in the same row, so streaming doesn't run a query per work
+    @Query("SELECT w FROM WorkEntity w LEFT JOIN FETCH w.notebook n LEFT JOIN FETCH n.user ORDER BY w.deliveryDate DESC")
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<WorkEntity> streamAll();
 
 }
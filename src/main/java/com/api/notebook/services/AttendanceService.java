@@ -1,32 +1,114 @@
 package com.api.notebook.services;
 
+import com.api.notebook.models.dtos.AttendanceDto;
 import com.api.notebook.models.entities.AttendanceEntity;
+import com.api.notebook.models.entities.LessonEntity;
+import com.api.notebook.models.entities.StudentEntity;
 import com.api.notebook.repositories.AttendanceRepository;
+import com.api.notebook.repositories.LessonRepository;
+import com.api.notebook.repositories.StudentRepository;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 @RequiredArgsConstructor
 public class AttendanceService {
 
+    //Streamed attendances whose students are resolved in a single query
+    private static final int STUDENTS_BATCH_SIZE = 100;
+
     private final AttendanceRepository attendanceRepository;
+    private final LessonRepository lessonRepository;
+    private final StudentRepository studentRepository;
 
     public void saveAttendance(AttendanceEntity attendance) {
         attendanceRepository.save(attendance);
     }
 
-    public List<AttendanceEntity> findAllAttendances() {
-        return attendanceRepository.findAll();
+    //Save the attendances of a lesson, each one replaces the lesson attendance at the same index
+    @Transactional
+    public Optional<LessonEntity> saveAttendancesByLesson(UUID lessonId, @NotNull List<AttendanceDto> attendanceDtos) {
+        var lessonOptional = lessonRepository.findById(lessonId);
+        if (lessonOptional.isEmpty()) return Optional.empty();
+        var lesson = lessonOptional.get();
+
+        //Every student of every attendance checked in a single query, unknown ids are left out
+        Set<UUID> requestedIds = new HashSet<>();
+        for (AttendanceDto attendanceDto:
+                attendanceDtos) {
+            requestedIds.addAll(getStudentsIds(attendanceDto.getPresentStudentsIds()));
+            requestedIds.addAll(getStudentsIds(attendanceDto.getAbsentStudentsIds()));
+        }
+        var studentIds = studentRepository.findAllById(requestedIds).stream()
+                .map(StudentEntity::getId)
+                .collect(Collectors.toSet());
+
+        var lessonAttendances = lesson.getAttendances();
+        List<AttendanceEntity> attendances = new ArrayList<>(attendanceDtos.size());
+        for (int x = 0; x < attendanceDtos.size(); x++) {
+            var attendance = x < lessonAttendances.size() ? lessonAttendances.get(x) : new AttendanceEntity();
+            attendance.setLesson(lesson);
+            attendance.setPresentStudentsIds(filterStudentsIds(attendanceDtos.get(x).getPresentStudentsIds(), studentIds));
+            attendance.setAbsentStudentsIds(filterStudentsIds(attendanceDtos.get(x).getAbsentStudentsIds(), studentIds));
+            attendances.add(attendance);
+        }
+        attendanceRepository.saveAll(attendances); //Sent in JDBC batches, see hibernate.jdbc.batch_size
+        return Optional.of(lesson);
     }
 
+    //Every attendance with its students, read in batches so one query resolves the students of a whole batch
+    public Stream<AttendanceEntity> streamAllAttendances() {
+        var attendances = attendanceRepository.streamAll();
+        var iterator = attendances.iterator();
+        var batches = new Iterator<List<AttendanceEntity>>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public List<AttendanceEntity> next() {
+                List<AttendanceEntity> batch = new ArrayList<>(STUDENTS_BATCH_SIZE);
+                while (iterator.hasNext() && batch.size() < STUDENTS_BATCH_SIZE) {
+                    batch.add(iterator.next());
+                }
+                return setStudents(batch);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED), false)
+                .flatMap(List::stream)
+                .onClose(attendances::close);
+    }
+
+    //Attendances of a lesson with their students, all of them resolved from the ids in one query
     public List<AttendanceEntity> findAllAttendancesByLessonId(UUID lessonId) {
-        return attendanceRepository.findByLessonId(lessonId);
+        return setStudents(attendanceRepository.findByLessonId(lessonId));
+    }
+
+    private List<AttendanceEntity> setStudents(@NotNull List<AttendanceEntity> attendances) {
+        Set<UUID> studentIds = new HashSet<>();
+        for (AttendanceEntity attendance:
+                attendances) {
+            studentIds.addAll(getStudentsIds(attendance.getPresentStudentsIds()));
+            studentIds.addAll(getStudentsIds(attendance.getAbsentStudentsIds()));
+        }
+        var students = studentRepository.findAllById(studentIds).stream()
+                .collect(Collectors.toMap(StudentEntity::getId, Function.identity()));
+
+        for (AttendanceEntity attendance:
+                attendances) {
+            attendance.setPresentStudents(mapStudents(attendance.getPresentStudentsIds(), students));
+            attendance.setAbsentStudents(mapStudents(attendance.getAbsentStudentsIds(), students));
+        }
+        return attendances;
     }
 
     public Optional<AttendanceEntity> findAttendanceById(UUID id) {
@@ -37,4 +119,28 @@ public class AttendanceService {
         attendanceRepository.deleteById(id);
     }
 
+    private static List<UUID> getStudentsIds(List<UUID> studentsIds) {
+        return studentsIds != null ? studentsIds : List.of();
+    }
+
+    private static List<UUID> getStudentsIds(UUID[] studentsIds) {
+        return studentsIds != null ? Arrays.asList(studentsIds) : List.of();
+    }
+
+    private static @NotNull List<StudentEntity> mapStudents(UUID[] studentsIds, Map<UUID, StudentEntity> students) {
+        List<StudentEntity> mappedStudents = new ArrayList<>();
+        for (UUID studentId:
+                getStudentsIds(studentsIds)) {
+            var student = students.get(studentId);
+            if (student != null) mappedStudents.add(student);
+        }
+        return mappedStudents;
+    }
+
+    private static UUID[] filterStudentsIds(List<UUID> studentsIds, Set<UUID> existingIds) {
+        return getStudentsIds(studentsIds).stream()
+                .filter(existingIds::contains)
+                .toArray(UUID[]::new);
+    }
+
 }
@@ -0,0 +1,45 @@
+package com.api.notebook.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class EntityStreamService {
+
+    //Entities kept in the persistence context before it is cleared
+    private static final int CLEAR_INTERVAL = 100;
+
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    //Write each entity as one JSON line as soon as it is read, memory stays flat whatever the table size
+    //Streamed queries need a transaction, read-only as it keeps the connection open until the last row
+    @Transactional(readOnly = true)
+    public <T> void writeNdjson(Supplier<Stream<T>> entitiesSupplier, OutputStream outputStream) {
+        var writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        try (var entities = entitiesSupplier.get()) {
+            var writtenCount = 0;
+            for (var iterator = entities.iterator(); iterator.hasNext(); ) {
+                writer.write(objectMapper.writeValueAsString(iterator.next()));
+                writer.write('\n');
+
+                //Written entities are no longer needed, drop them and what they loaded
+                writtenCount++;
+                if (writtenCount % CLEAR_INTERVAL == 0) entityManager.clear();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
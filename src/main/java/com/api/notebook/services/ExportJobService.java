@@ -0,0 +1,246 @@
+package com.api.notebook.services;
+
+import com.api.notebook.enums.JobStatusEnum;
+import com.api.notebook.models.ExportJobModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExportJobService {
+
+    private final NotebookService notebookService;
+    private final NotebookExportLoaderService notebookExportLoaderService;
+    private final NotebookFileCacheService notebookFileCacheService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${notebook.export.pool-size}")
+    private int poolSize;
+
+    @Value("${notebook.export.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${notebook.export.job-ttl-minutes}")
+    private long jobTtlMinutes;
+
+    //Jobs and their files are kept by the instance that runs them and are lost on restart
+    //Requires a single instance, or sticky sessions, since another one answers an unknown job id with 404
+    private final Map<UUID, ExportJobModel> jobs = new ConcurrentHashMap<>();
+    private ExecutorService exportExecutor;
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    @PostConstruct
+    public void startExecutor() { //Bounded pool, submissions past the queue capacity are rejected
+        exportExecutor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        //Exports sort the notebook collections in place, read only keeps that from being flushed
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @PreDestroy
+    public void stopExecutor() {
+        exportExecutor.shutdownNow();
+    }
+
+    public Optional<ExportJobModel> findJobById(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    //Submit a notebook finalization, returns empty if the pool is full
+    public Optional<ExportJobModel> submitFinalizeJob(
+            UUID notebookId,
+            UUID userId,
+            @NotNull Map<String, Integer> workTypeWeights
+    ) {
+        var job = new ExportJobModel();
+        job.setId(UUID.randomUUID());
+        job.setNotebookId(notebookId);
+        job.setUserId(userId);
+        job.setStatus(JobStatusEnum.PENDING);
+        job.setCreateDate(LocalDateTime.now(ZoneId.of("UTC-3")));
+        jobs.put(job.getId(), job);
+
+        var weights = new LinkedHashMap<>(workTypeWeights); //Keeps the sheets columns order
+        try {
+            exportExecutor.execute(() -> runFinalizeJob(job, weights));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            return Optional.empty();
+        }
+        return Optional.of(job);
+    }
+
+    private void runFinalizeJob(@NotNull ExportJobModel job, Map<String, Integer> workTypeWeights) {
+        job.setStatus(JobStatusEnum.RUNNING);
+        Path downloadFile = null;
+        try {
+            //The job keeps its own file until it expires, the cached one may be swept before that
+            var file = notebookFileCacheService.createDownloadFile();
+            downloadFile = file;
+            var finalized = transactionTemplate.execute(status -> {
+                var notebookOptional = notebookExportLoaderService.loadNotebookForExport(job.getNotebookId());
+                if (notebookOptional.isEmpty()) return false;
+                try {
+                    notebookService.finalizeNotebookToFile(notebookOptional.get(), workTypeWeights, file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+            if (!Boolean.TRUE.equals(finalized)) {
+                notebookFileCacheService.deleteDownloadFile(file);
+                job.setErrorMessage("Caderneta não encontrada!");
+                job.setStatus(JobStatusEnum.FAILED);
+                return;
+            }
+
+            job.setFile(file);
+            job.setStatus(JobStatusEnum.DONE);
+        } catch (Exception e) {
+            notebookFileCacheService.deleteDownloadFile(downloadFile);
+            log.error("Finalize job {} of notebook {} failed", job.getId(), job.getNotebookId(), e);
+            job.setErrorMessage("Erro ao finalizar a caderneta: " + e);
+            job.setStatus(JobStatusEnum.FAILED);
+        }
+    }
+
+    //Write the notebooks spreadsheets to a ZIP, generating ahead in parallel but writing in order
+    public void writeNotebooksZip(
+            @NotNull List<UUID> notebookIds,
+            @NotNull Map<String, Integer> workTypeWeights,
+            @NotNull OutputStream outputStream
+    ) throws IOException {
+        var weights = new LinkedHashMap<>(workTypeWeights);
+        Deque<Future<ZipEntryFile>> pendingEntries = new ArrayDeque<>();
+        var nextNotebook = 0;
+
+        try (var zipOutputStream = new ZipOutputStream(outputStream)) {
+            while (nextNotebook < notebookIds.size() || !pendingEntries.isEmpty()) {
+
+                //At most one notebook per worker is generated ahead of the archive
+                while (nextNotebook < notebookIds.size() && pendingEntries.size() < poolSize) {
+                    pendingEntries.add(submitZipEntry(notebookIds.get(nextNotebook), weights));
+                    nextNotebook++;
+                }
+
+                var entryFile = awaitZipEntry(pendingEntries.poll());
+                if (entryFile == null) continue; //Notebook deleted in the meantime
+
+                try {
+                    zipOutputStream.putNextEntry(new ZipEntry(entryFile.name()));
+                    Files.copy(entryFile.file(), zipOutputStream);
+                    zipOutputStream.closeEntry();
+                } finally {
+                    notebookFileCacheService.deleteDownloadFile(entryFile.file());
+                }
+            }
+        } finally {
+            pendingEntries.forEach(this::cancelZipEntry);
+        }
+    }
+
+    private @NotNull Future<ZipEntryFile> submitZipEntry(UUID notebookId, Map<String, Integer> workTypeWeights) {
+        var task = new FutureTask<>(() -> exportZipEntry(notebookId, workTypeWeights));
+        try {
+            exportExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run(); //Pool is full, generate it on the streaming thread
+        }
+        return task;
+    }
+
+    //Each entry gets a download file of its own, so a write to the notebook before it is copied can't remove it
+    private ZipEntryFile exportZipEntry(UUID notebookId, Map<String, Integer> workTypeWeights) {
+        return readOnlyTransactionTemplate.execute(status -> {
+            var notebookOptional = notebookExportLoaderService.loadNotebookForExport(notebookId);
+            if (notebookOptional.isEmpty()) return null;
+
+            var notebook = notebookOptional.get();
+            Path downloadFile = null;
+            try {
+                downloadFile = notebookFileCacheService.createDownloadFile();
+                notebookService.exportNotebookToFile(notebook, workTypeWeights, downloadFile);
+                return new ZipEntryFile(
+                        String.format("%s_%s_%s_%s.xlsx",
+                                notebook.getClasse(),
+                                notebook.getSubject(),
+                                notebook.getBimester(),
+                                notebook.getId().toString().substring(0, 8)),
+                        downloadFile
+                );
+            } catch (IOException e) {
+                notebookFileCacheService.deleteDownloadFile(downloadFile);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                notebookFileCacheService.deleteDownloadFile(downloadFile);
+                throw e;
+            }
+        });
+    }
+
+    //Entries already generated are never copied, their files are deleted here
+    private void cancelZipEntry(@NotNull Future<ZipEntryFile> future) {
+        if (future.cancel(true) || future.isCancelled()) return;
+        try {
+            var entryFile = future.get();
+            if (entryFile != null) notebookFileCacheService.deleteDownloadFile(entryFile.file());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) { //Failed entries delete their own file
+        }
+    }
+
+    private static ZipEntryFile awaitZipEntry(@NotNull Future<ZipEntryFile> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private record ZipEntryFile(String name, Path file) {}
+
+    //Drop finished jobs after the TTL along with their download files
+    @Scheduled(fixedDelayString = "${notebook.export.job-ttl-minutes}", timeUnit = TimeUnit.MINUTES)
+    public void deleteExpiredJobs() {
+        var expiration = LocalDateTime.now(ZoneId.of("UTC-3")).minusMinutes(jobTtlMinutes);
+        jobs.values().removeIf(job -> {
+            var expired = job.getCreateDate().isBefore(expiration) &&
+                    job.getStatus() != JobStatusEnum.PENDING &&
+                    job.getStatus() != JobStatusEnum.RUNNING;
+            if (expired) notebookFileCacheService.deleteDownloadFile(job.getFile());
+            return expired;
+        });
+    }
+
+}
@@ -1,28 +1,84 @@
 package com.api.notebook.services;
 
 import com.api.notebook.models.entities.GradeEntity;
+import com.api.notebook.models.entities.StudentEntity;
+import com.api.notebook.models.entities.WorkEntity;
 import com.api.notebook.repositories.GradeRepository;
+import com.api.notebook.repositories.StudentRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class GradeService {
 
     private final GradeRepository gradeRepository;
+    private final StudentRepository studentRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private TransactionTemplate newTransactionTemplate;
+
+    @PostConstruct
+    public void startTransactionTemplate() { //A retry needs a transaction of its own, not a rolled back outer one
+        newTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
 
     public void saveGrade(GradeEntity grade) {
         gradeRepository.save(grade);
     }
 
-    public List<GradeEntity> findAllGrades() {
-        return gradeRepository.findAll();
+    //Insert or update the grades of a work, one per student, the (work, student) key picks the existing grade
+    //A concurrent batch inserting the same key first fails this one on the unique constraint, the retry updates it
+    public void upsertGradesByWork(@NotNull WorkEntity work, @NotNull Map<UUID, Double> studentGrades) {
+        try {
+            newTransactionTemplate.executeWithoutResult(status -> saveGradesByWork(work, studentGrades));
+        } catch (DataIntegrityViolationException e) {
+            newTransactionTemplate.executeWithoutResult(status -> saveGradesByWork(work, studentGrades));
+        }
+    }
+
+    private void saveGradesByWork(@NotNull WorkEntity work, @NotNull Map<UUID, Double> studentGrades) {
+        var students = studentRepository.findAllById(studentGrades.keySet());
+        if (students.size() != studentGrades.size()) {
+            throw new IllegalArgumentException("Aluno não encontrado!");
+        }
+
+        var existingGrades = gradeRepository.findByWorkIdAndStudentIdIn(work.getId(), studentGrades.keySet())
+                .stream()
+                .collect(Collectors.toMap(
+                        grade -> grade.getStudent().getId(),
+                        Function.identity(),
+                        (grade, duplicate) -> grade //Left by the old create endpoint if the dedupe script didn't run
+                ));
+
+        List<GradeEntity> grades = new ArrayList<>(students.size());
+        for (StudentEntity student:
+                students) {
+            var grade = existingGrades.get(student.getId());
+            if (grade == null) {
+                grade = new GradeEntity();
+                grade.setWork(work);
+                grade.setStudent(student);
+            }
+            grade.setGrade(studentGrades.get(student.getId()));
+            grades.add(grade);
+        }
+        gradeRepository.saveAllAndFlush(grades); //Sent in JDBC batches, see hibernate.jdbc.batch_size
+    }
+
+    public Stream<GradeEntity> streamAllGrades() {
+        return gradeRepository.streamAll();
     }
 
     public List<GradeEntity> findAllGradesByWorkId(UUID workId) {
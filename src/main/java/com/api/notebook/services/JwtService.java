@@ -1,76 +1,151 @@
 package com.api.notebook.services;
 
+import com.api.notebook.models.entities.TokenRevocationEntity;
+import com.api.notebook.models.entities.UserEntity;
+import com.api.notebook.repositories.TokenRevocationRepository;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 
 import java.security.Key;
-import java.util.Collections;
-import java.util.List;
-import java.util.function.Function;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
 public class JwtService {
 
-    private final UserService userService;
+    private static final String ROLE_CLAIM = "role";
+    private static final String VERIFIED_CLAIM = "verified";
 
     @Value("${jwt.secret.key}")
     private String secretKey;
 
-    private @NotNull Key getKey() {
-        return Keys.hmacShaKeyFor(secretKey.getBytes());
+    @Value("${jwt.expiration-hours}")
+    private long expirationHours;
+
+    //Tokens issued up to the instant are rejected, one entry per user until their tokens would have expired
+    //Written through to the table and read back on start and periodically, requests only look at the map
+    private final Map<UUID, Instant> revocations = new ConcurrentHashMap<>();
+    private final TokenRevocationRepository tokenRevocationRepository;
+    private Key key;
+    private JwtParser parser;
+
+    @PostConstruct
+    public void startParser() { //The key and the parser are immutable, one of each serves every request
+        key = Keys.hmacShaKeyFor(secretKey.getBytes());
+        parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
     }
 
-    public String generateToken(String email) { //Generate a token
-        return "Bearer " + Jwts.builder()
-                .setSubject(email)
-                .signWith(getKey(), SignatureAlgorithm.HS256)
-                .compact();
+    @PostConstruct
+    public void loadRevocations() { //Revocations made before a restart still reject the tokens they did
+        refreshRevocations();
     }
 
-    private Claims extractAllClaims(String token) { //Extract all claims from token
-        return Jwts.parserBuilder()
-                .setSigningKey(getKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    //Revocations made by other instances reach this one within the refresh delay
+    @Scheduled(fixedDelayString = "${jwt.revocations-refresh-seconds}", timeUnit = TimeUnit.SECONDS)
+    public void refreshRevocations() {
+        for (TokenRevocationEntity revocation:
+                tokenRevocationRepository.findByRevokedAtAfter(findExpiration())) {
+            revocations.merge(revocation.getUserId(), revocation.getRevokedAt(),
+                    (current, loaded) -> current.isAfter(loaded) ? current : loaded);
+        }
     }
 
-    //Extract one claim from token
-    private <T> T extractClaim(String token, @NotNull Function<Claims, T> claimsTFunction) {
-        return claimsTFunction.apply(extractAllClaims(token));
+    //Generate a token carrying what authenticating needs, so requests don't read the user back
+    public String generateToken(@NotNull UserEntity user) {
+        var issuedAt = Instant.now();
+        var revokedAt = revocations.get(user.getId());
+        if (revokedAt != null && !issuedAt.truncatedTo(ChronoUnit.SECONDS).isAfter(revokedAt)) {
+            issuedAt = revokedAt.plusSeconds(1); //Logged in the second tokens were revoked, the new token must outlive it
+        }
+        return "Bearer " + Jwts.builder()
+                .setSubject(user.getId().toString())
+                .claim(ROLE_CLAIM, user.getRole() == null ? null : user.getRole().name())
+                .claim(VERIFIED_CLAIM, Boolean.TRUE.equals(user.getVerified()))
+                .setIssuedAt(Date.from(issuedAt))
+                .setExpiration(Date.from(issuedAt.plus(expirationHours, ChronoUnit.HOURS)))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
     }
 
-    public String getEmailByToken(String token) { //Get email by token
-        return extractClaim(token, Claims::getSubject);
+    private Claims extractAllClaims(String token) { //Extract all claims from token, expiration checked
+        return parser.parseClaimsJws(token).getBody();
     }
 
     public Authentication tryToAuthenticate(String token) { //Try to authenticate user by token
-        var teacherOptional = userService.findUserByEmail(getEmailByToken(token));
-        if (teacherOptional.isPresent()) { //Verify if the user exists
-            if (teacherOptional.get().isVerified()) {
-                return new UsernamePasswordAuthenticationToken( //If user exists returns an authentication
-                        teacherOptional.get().getId(),
-                        teacherOptional.get().getPassword(),
-                        List.of(new SimpleGrantedAuthority(teacherOptional.get().getRole().name()))
-                );
-            }
-            return new UsernamePasswordAuthenticationToken(
-                    teacherOptional.get().getId(),
-                    teacherOptional.get().getPassword(),
-                    Collections.emptyList()
+        Claims claims;
+        try {
+            claims = extractAllClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        if (claims.getSubject() == null || claims.getIssuedAt() == null || claims.getExpiration() == null) {
+            return null; //Tokens from before the claims, the user logs in again
+        }
+
+        var userId = UUID.fromString(claims.getSubject());
+        var revokedAt = revocations.get(userId);
+        if (revokedAt != null && !claims.getIssuedAt().toInstant().isAfter(revokedAt)) {
+            return null; //Issued in the second of the revocation or before it
+        }
+
+        var role = claims.get(ROLE_CLAIM, String.class);
+        if (Boolean.TRUE.equals(claims.get(VERIFIED_CLAIM, Boolean.class)) && role != null) {
+            return new UsernamePasswordAuthenticationToken( //If user is verified returns an authentication with its role
+                    userId,
+                    null,
+                    List.of(new SimpleGrantedAuthority(role))
             );
         }
-        return null;
+        return new UsernamePasswordAuthenticationToken(
+                userId,
+                null,
+                Collections.emptyList()
+        );
+    }
+
+    //Reject the user tokens issued so far, after a change to what they claim or to the password
+    public void revokeTokens(UUID userId) {
+        var revocation = new TokenRevocationEntity();
+        revocation.setUserId(userId);
+        var revokedAt = Instant.now().truncatedTo(ChronoUnit.SECONDS); //Same precision as the iat claim
+        var previousRevokedAt = revocations.get(userId);
+        if (previousRevokedAt != null && !revokedAt.isAfter(previousRevokedAt)) {
+            revokedAt = previousRevokedAt.plusSeconds(1); //Also rejects the tokens issued after the previous one
+        }
+        revocation.setRevokedAt(revokedAt);
+        tokenRevocationRepository.save(revocation);
+        revocations.put(userId, revocation.getRevokedAt());
+    }
+
+    //Drop revocations older than a token lifetime, the tokens they rejected expired on their own
+    @Scheduled(fixedDelayString = "${jwt.expiration-hours}", timeUnit = TimeUnit.HOURS)
+    public void deleteExpiredRevocations() {
+        var expiration = findExpiration();
+        tokenRevocationRepository.deleteByRevokedAtBefore(expiration);
+        revocations.values().removeIf(revokedAt -> revokedAt.isBefore(expiration));
+    }
+
+    private Instant findExpiration() { //Tokens issued before it have expired
+        return Instant.now().minus(expirationHours, ChronoUnit.HOURS);
     }
 
 }
@@ -1,32 +1,51 @@
 package com.api.notebook.services;
 
-import com.api.notebook.models.entities.AttendanceEntity;
 import com.api.notebook.models.entities.LessonEntity;
 import com.api.notebook.repositories.LessonRepository;
+import com.api.notebook.utils.ScrollUtils;
 import lombok.RequiredArgsConstructor;
-import org.jetbrains.annotations.NotNull;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class LessonService {
 
+    //Fields the lessons listing can be sorted by, with their types to read cursors back
+    public static final Map<String, ScrollUtils.SortField> SORT_FIELDS = Map.of(
+            "date", new ScrollUtils.SortField("sortDate", LocalDate.class),
+            "title", new ScrollUtils.SortField("title", String.class)
+    );
+
     private final LessonRepository lessonRepository;
 
     public void saveLesson(LessonEntity lesson) {
         lessonRepository.save(lesson);
     }
 
-    public List<LessonEntity> findAllLessons() {
-        return lessonRepository.findAll();
+    public Stream<LessonEntity> streamAllLessons() {
+        return lessonRepository.streamAll();
     }
 
-    public Page<LessonEntity> findAllLessonsByNotebookId(UUID notebookId, Pageable pageable) {
-        return lessonRepository.findByNotebookId(notebookId, pageable);
+    //Slice of the notebook lessons after the given position, the keyset keeps deep slices as cheap as the first
+    public Window<LessonEntity> findAllLessonsByNotebookId(
+            UUID notebookId,
+            Sort sort,
+            ScrollPosition position,
+            int size
+    ) {
+        return lessonRepository.findBy(
+                (Specification<LessonEntity>) (root, query, builder) ->
+                        builder.equal(root.get("notebook").get("id"), notebookId),
+                query -> query.sortBy(sort).limit(size).scroll(position)
+        );
     }
 
     public Optional<LessonEntity> findLessonById(UUID id) {
@@ -37,26 +56,4 @@ public class LessonService {
         lessonRepository.deleteById(id);
     }
 
-    //Set attendance to a lesson
-    public void setAttendanceToLesson(UUID lessonId, @NotNull AttendanceEntity attendance, int index) {
-        var lessonOptional = findLessonById(lessonId);
-        if (lessonOptional.isPresent()) {
-
-            //Check if the lesson has attendances
-            if(!lessonOptional.get().getAttendances().isEmpty()) {
-
-                //Take te attendance by the provided index
-                AttendanceEntity attendanceByIndex = lessonOptional.get().getAttendances().get(index);
-
-                //Check if the attendance exists
-                if (attendanceByIndex != null) {
-
-                    //If so it sets the provided attendance id as the attendance that was found
-                    attendance.setId(attendanceByIndex.getId());
-                }
-            }
-            attendance.setLesson(lessonOptional.get());
-        }
-    }
-
 }
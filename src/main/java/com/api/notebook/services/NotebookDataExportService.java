@@ -0,0 +1,126 @@
+package com.api.notebook.services;
+
+import com.api.notebook.enums.ExportFormatEnum;
+import com.api.notebook.models.AttendanceRowModel;
+import com.api.notebook.models.GradeRowModel;
+import com.api.notebook.repositories.AttendanceRepository;
+import com.api.notebook.repositories.GradeRepository;
+import com.api.notebook.repositories.StudentRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class NotebookDataExportService {
+
+    private static final String[] ATTENDANCES_HEADER = {
+            "lessonId", "lessonDate", "attendanceId", "studentNumber", "studentName", "present"
+    };
+    private static final String[] GRADES_HEADER = {
+            "studentNumber", "studentName", "workId", "workTitle", "workType", "deliveryDate", "grade"
+    };
+
+    private final AttendanceRepository attendanceRepository;
+    private final GradeRepository gradeRepository;
+    private final StudentRepository studentRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true) //Streamed like EntityStreamService.writeNdjson
+    public void writeAttendances(UUID notebookId, ExportFormatEnum format, OutputStream outputStream) {
+        writeRows(
+                () -> streamAttendanceRows(notebookId),
+                ATTENDANCES_HEADER,
+                row -> new Object[] {
+                        row.getLessonId(), row.getLessonDate(), row.getAttendanceId(),
+                        row.getStudentNumber(), row.getStudentName(), row.getPresent()
+                },
+                format,
+                outputStream
+        );
+    }
+
+    //One row per student and lesson slot of the notebook, students not marked present are absent
+    private @NotNull Stream<AttendanceRowModel> streamAttendanceRows(UUID notebookId) {
+        var students = studentRepository.findRosterByNotebookId(notebookId);
+        return attendanceRepository.streamSlotsByNotebookId(notebookId).flatMap(slot -> {
+            var presentStudentsIds = slot.getPresentStudentsIds() == null ? //Not yet copied from the join tables
+                    Set.<UUID>of() : new HashSet<>(Arrays.asList(slot.getPresentStudentsIds()));
+            return students.stream().map(student -> new AttendanceRowModel(
+                    slot.getLessonId(), slot.getLessonDate(), slot.getAttendanceId(),
+                    student.getNumber(), student.getName(), presentStudentsIds.contains(student.getId())
+            ));
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public void writeGrades(UUID notebookId, ExportFormatEnum format, OutputStream outputStream) {
+        writeRows(
+                () -> gradeRepository.streamRowsByNotebookId(notebookId),
+                GRADES_HEADER,
+                row -> new Object[] {
+                        row.getStudentNumber(), row.getStudentName(), row.getWorkId(), row.getWorkTitle(),
+                        row.getWorkType(), row.getDeliveryDate(), row.getGrade()
+                },
+                format,
+                outputStream
+        );
+    }
+
+    //Write each row as soon as it is read, nothing but the current row is kept in memory
+    private <T> void writeRows(
+            Supplier<Stream<T>> rowsSupplier,
+            String[] csvHeader,
+            Function<T, Object[]> csvValues,
+            ExportFormatEnum format,
+            OutputStream outputStream
+    ) {
+        var writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        try (var rows = rowsSupplier.get()) {
+            if (format == ExportFormatEnum.CSV) writeCsvLine(writer, csvHeader);
+            for (var iterator = rows.iterator(); iterator.hasNext(); ) {
+                var row = iterator.next();
+                if (format == ExportFormatEnum.CSV) {
+                    writeCsvLine(writer, csvValues.apply(row));
+                } else {
+                    writer.write(objectMapper.writeValueAsString(row));
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeCsvLine(@NotNull Writer writer, Object @NotNull [] values) throws IOException {
+        for (int x = 0; x < values.length; x++) {
+            if (x > 0) writer.write(',');
+            writer.write(escapeCsv(Objects.toString(values[x], "")));
+        }
+        writer.write("\r\n");
+    }
+
+    //Quote the value when it has a separator, quote or line break, doubling inner quotes
+    private static String escapeCsv(@NotNull String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 &&
+                value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.api.notebook.services;
+
+import com.api.notebook.models.entities.NotebookEntity;
+import com.api.notebook.repositories.LessonRepository;
+import com.api.notebook.repositories.NotebookRepository;
+import com.api.notebook.repositories.StudentRepository;
+import com.api.notebook.repositories.WorkRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Service
+@RequiredArgsConstructor
+public class NotebookExportLoaderService {
+
+    private final NotebookRepository notebookRepository;
+    private final LessonRepository lessonRepository;
+    private final StudentRepository studentRepository;
+    private final WorkRepository workRepository;
+
+    //Load everything the spreadsheet reads in six queries, whatever the notebook size.
+    //Each query fetches a single collection, the persistence context stitches them in the same entities,
+    //so it must run inside a transaction
+    public Optional<NotebookEntity> loadNotebookForExport(UUID notebookId) {
+        var notebookOptional = notebookRepository.findWithUserById(notebookId);
+        if (notebookOptional.isEmpty()) return Optional.empty();
+        notebookOptional.get().setStudents(studentRepository.findRosterByNotebookId(notebookId));
+
+        notebookRepository.findWithLessonsById(notebookId);
+        lessonRepository.findWithAttendancesByNotebookId(notebookId);
+
+        notebookRepository.findWithWorksById(notebookId);
+        workRepository.findWithGradesByNotebookId(notebookId);
+
+        return notebookOptional;
+    }
+
+}
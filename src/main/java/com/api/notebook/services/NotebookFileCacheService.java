@@ -0,0 +1,144 @@
+package com.api.notebook.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+public class NotebookFileCacheService {
+
+    private static final String DOWNLOADS_DIR = "downloads";
+
+    @Value("${notebook.export.cache-dir}")
+    private String cacheDir;
+
+    @Value("${notebook.export.cache-ttl-days}")
+    private long cacheTtlDays;
+
+    //Find the spreadsheet generated for this exact notebook data and weights
+    //A write bumps the data version, so older files are never found again and only wait for the expired files sweep
+    public Optional<Path> findFile(UUID notebookId, long dataVersion, Map<String, Integer> workTypeWeights) {
+        var file = getCacheDir().resolve(getFileName(notebookId, dataVersion, workTypeWeights));
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    //Temp file inside the cache dir, so storing it is a rename in the same file system
+    public @NotNull Path createTempFile() throws IOException {
+        return Files.createTempFile(Files.createDirectories(getCacheDir()), "caderneta-", ".tmp");
+    }
+
+    public @NotNull Path storeFile(
+            UUID notebookId,
+            long dataVersion,
+            Map<String, Integer> workTypeWeights,
+            @NotNull Path file
+    ) throws IOException {
+        var cachedFile = getCacheDir().resolve(getFileName(notebookId, dataVersion, workTypeWeights));
+        return Files.move(file, cachedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //File of its own for one download, outside the cached spreadsheets the expired files sweep deletes
+    public @NotNull Path createDownloadFile() throws IOException {
+        return Files.createDirectories(getCacheDir().resolve(DOWNLOADS_DIR)).resolve(UUID.randomUUID() + ".xlsx");
+    }
+
+    //Hard link the spreadsheet to the download file, copying it where links aren't supported
+    //Returns false if the spreadsheet was swept in the meantime
+    public boolean linkFile(@NotNull Path file, @NotNull Path downloadFile) throws IOException {
+        try {
+            Files.createLink(downloadFile, file);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            try {
+                Files.copy(file, downloadFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (NoSuchFileException ex) {
+                return false;
+            }
+        }
+        //A link shares the cached file times, the expired files sweep counts from this use
+        Files.setLastModifiedTime(downloadFile, FileTime.from(Instant.now()));
+        return true;
+    }
+
+    public void deleteDownloadFile(Path downloadFile) {
+        if (downloadFile == null) return;
+        try {
+            Files.deleteIfExists(downloadFile);
+        } catch (IOException e) {
+            log.warn("Could not delete the download file {}", downloadFile, e);
+        }
+    }
+
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.DAYS)
+    public void deleteExpiredFiles() {
+        var modifiedBefore = Instant.now().minus(cacheTtlDays, ChronoUnit.DAYS);
+        deleteFiles("*.xlsx", modifiedBefore);
+        deleteFiles(getCacheDir().resolve(DOWNLOADS_DIR), "*.xlsx", modifiedBefore); //Left by cancelled exports or a stopped instance
+    }
+
+    private void deleteFiles(String glob, Instant modifiedBefore) {
+        deleteFiles(getCacheDir(), glob, modifiedBefore);
+    }
+
+    private void deleteFiles(Path dir, String glob, Instant modifiedBefore) {
+        if (!Files.isDirectory(dir)) return;
+        try (var files = Files.newDirectoryStream(dir, glob)) {
+            for (Path file:
+                    files) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(modifiedBefore)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete the {} files in {}", glob, dir, e);
+        }
+    }
+
+    private @NotNull Path getCacheDir() {
+        return Path.of(cacheDir);
+    }
+
+    private static @NotNull String getFileName(
+            UUID notebookId,
+            long dataVersion,
+            @NotNull Map<String, Integer> workTypeWeights
+    ) {
+        return notebookId + "-" + dataVersion + "-" + hashWorkTypeWeights(workTypeWeights) + ".xlsx";
+    }
+
+    //Weights order is the sheets columns order, so it is part of the hash
+    private static @NotNull String hashWorkTypeWeights(@NotNull Map<String, Integer> workTypeWeights) {
+        var weights = new StringBuilder();
+        workTypeWeights.forEach((type, weight) -> weights.append(type).append('=').append(weight).append(';'));
+        try {
+            var digest = MessageDigest.getInstance("SHA-256")
+                    .digest(weights.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
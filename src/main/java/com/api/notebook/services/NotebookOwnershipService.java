@@ -0,0 +1,83 @@
+package com.api.notebook.services;
+
+import com.api.notebook.repositories.LessonRepository;
+import com.api.notebook.repositories.NotebookRepository;
+import com.api.notebook.repositories.WorkRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+//Ownership checks for @PreAuthorize, answered by id queries instead of loading the entities
+@Service
+@RequiredArgsConstructor
+public class NotebookOwnershipService {
+
+    private final NotebookRepository notebookRepository;
+    private final LessonRepository lessonRepository;
+    private final WorkRepository workRepository;
+
+    @Value("${notebook.ownership.cache-size}")
+    private int cacheSize;
+
+    private Map<UUID, UUID> notebookOwners;
+
+    @PostConstruct
+    public void startCache() { //Notebook owner by notebook id, the least recently used past the size are dropped
+        notebookOwners = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, UUID> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    //A notebook never changes owner, so only its deletion makes the cached one wrong
+    public Optional<UUID> findNotebookOwnerId(UUID notebookId) {
+        var ownerId = notebookOwners.get(notebookId);
+        if (ownerId != null) return Optional.of(ownerId);
+
+        var ownerOptional = notebookRepository.findUserIdById(notebookId);
+        ownerOptional.ifPresent(id -> notebookOwners.put(notebookId, id));
+        return ownerOptional;
+    }
+
+    public boolean existsNotebook(UUID notebookId) {
+        return findNotebookOwnerId(notebookId).isPresent();
+    }
+
+    //Missing notebooks, lessons and works pass, so the endpoint answers not found instead of forbidden
+    public boolean isNotebookOwner(UUID notebookId, Object principal) {
+        var ownerOptional = findNotebookOwnerId(notebookId);
+        return ownerOptional.isEmpty() || ownerOptional.get().equals(principal);
+    }
+
+    public boolean isLessonOwner(UUID lessonId, Object principal) {
+        return principal instanceof UUID userId && (
+                lessonRepository.existsByIdAndNotebookUserId(lessonId, userId) ||
+                !lessonRepository.existsById(lessonId)
+        );
+    }
+
+    public boolean isWorkOwner(UUID workId, Object principal) {
+        return principal instanceof UUID userId && (
+                workRepository.existsByIdAndNotebookUserId(workId, userId) ||
+                !workRepository.existsById(workId)
+        );
+    }
+
+    public void invalidateNotebook(UUID notebookId) {
+        notebookOwners.remove(notebookId);
+    }
+
+    public void invalidateOwner(UUID userId) { //The user notebooks are deleted along with them
+        notebookOwners.values().removeIf(userId::equals);
+    }
+
+}
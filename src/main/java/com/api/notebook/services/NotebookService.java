@@ -1,29 +1,82 @@
 package com.api.notebook.services;
 
+import com.api.notebook.enums.BimesterEnum;
+import com.api.notebook.enums.ClassEnum;
 import com.api.notebook.enums.StatusEnum;
-import com.api.notebook.models.MissingTaskLessonModel;
-import com.api.notebook.models.MissingTaskWorkModel;
+import com.api.notebook.enums.SubjectEnum;
+import com.api.notebook.models.GradeSumModel;
 import com.api.notebook.models.MissingTasksModel;
+import com.api.notebook.models.StudentAverageModel;
 import com.api.notebook.models.entities.*;
+import com.api.notebook.repositories.ClassRosterRepository;
 import com.api.notebook.repositories.NotebookRepository;
 import com.api.notebook.utils.NotebookUtils;
+import com.api.notebook.utils.ScrollUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
 public class NotebookService {
 
+    //Fields the notebooks listing can be sorted by, with their types to read cursors back
+    public static final Map<String, ScrollUtils.SortField> SORT_FIELDS = Map.of(
+            "status", new ScrollUtils.SortField("status", StatusEnum.class),
+            "createDate", new ScrollUtils.SortField("createDate", LocalDate.class),
+            "classe", new ScrollUtils.SortField("classe", ClassEnum.class),
+            "subject", new ScrollUtils.SortField("subject", SubjectEnum.class),
+            "bimester", new ScrollUtils.SortField("bimester", BimesterEnum.class)
+    );
+
+    private static final int REPAIR_CHUNK_SIZE = 500;
+
     private final NotebookRepository notebookRepository;
+    private final ClassRosterRepository classRosterRepository;
+    private final NotebookFileCacheService notebookFileCacheService;
+    private final NotebookOwnershipService notebookOwnershipService;
+
+    @Value("${notebook.export.sheet-pool-size}")
+    private int sheetPoolSize;
+
+    @Value("${notebook.export.sheet-queue-capacity}")
+    private int sheetQueueCapacity;
+
+    private ThreadPoolExecutor sheetExecutor;
+
+    @PostConstruct
+    public void startSheetExecutor() { //Bounded pool, past the queue capacity the exporting thread lays the sheet out itself
+        sheetExecutor = new ThreadPoolExecutor(
+                sheetPoolSize, sheetPoolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(sheetQueueCapacity),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    @PreDestroy
+    public void stopSheetExecutor() {
+        sheetExecutor.shutdownNow();
+    }
 
     public void saveNotebook(NotebookEntity notebook) {
         notebookRepository.save(notebook);
@@ -33,8 +86,27 @@ public class NotebookService {
         return notebookRepository.findAll();
     }
 
-    public Page<NotebookEntity> findAllNotebooksByTeacherId(UUID teacherId, Pageable pageable) {
-        return notebookRepository.findByUserId(teacherId, pageable);
+    public List<UUID> findAllNotebookIdsByFilters(
+            UUID teacherId,
+            ClassEnum classe,
+            SubjectEnum subject,
+            BimesterEnum bimester
+    ) {
+        return notebookRepository.findIdsByFilters(teacherId, classe, subject, bimester);
+    }
+
+    //Slice of the teacher notebooks after the given position, the keyset keeps deep slices as cheap as the first
+    public Window<NotebookEntity> findAllNotebooksByTeacherId(
+            UUID teacherId,
+            Sort sort,
+            ScrollPosition position,
+            int size
+    ) {
+        return notebookRepository.findBy(
+                (Specification<NotebookEntity>) (root, query, builder) ->
+                        builder.equal(root.get("user").get("id"), teacherId),
+                query -> query.sortBy(sort).limit(size).scroll(position)
+        );
     }
 
     public Optional<NotebookEntity> findNotebookById(UUID id) {
@@ -43,6 +115,62 @@ public class NotebookService {
 
     public void deleteNotebookById(UUID id) {
         notebookRepository.deleteById(id);
+        notebookOwnershipService.invalidateNotebook(id);
+    }
+
+    //Mark the notebook data as changed, its cached spreadsheets no longer match
+    //For writes that leave its missing tasks as they are, the others touch it by lesson or by work
+    public void touchNotebook(UUID notebookId) {
+        notebookRepository.incrementDataVersion(List.of(notebookId));
+    }
+
+    //Read before a write to the lesson or work, so the touch after it moves the counter by that change alone
+    //Concurrent writes to the same lesson or work may miscount, the daily repair puts the counter right
+    public long countMissingLesson(UUID lessonId) {
+        return notebookRepository.countMissingLesson(lessonId);
+    }
+
+    public long countMissingWork(UUID workId) {
+        return notebookRepository.countMissingWork(workId);
+    }
+
+    public void touchNotebookByLesson(UUID notebookId, UUID lessonId, long missingBefore) {
+        notebookRepository.touchByLesson(notebookId, lessonId, missingBefore);
+    }
+
+    public void touchNotebookByWork(UUID notebookId, UUID workId, long missingBefore) {
+        notebookRepository.touchByWork(notebookId, workId, missingBefore);
+    }
+
+    public void touchNotebooksByClasse(ClassEnum classe) { //Only the notebooks reading the class roster change
+        refreshNotebooks(notebookRepository.findOpenIdsByClasse(classe));
+    }
+
+    //Touch notebooks after a roster change, recording the class roster version their data now reflects
+    public void refreshNotebooks(@NotNull List<UUID> notebookIds) {
+        if (notebookIds.isEmpty()) return;
+        notebookRepository.incrementDataVersion(notebookIds);
+        notebookRepository.refreshMissingWorksCounters(notebookIds);
+        notebookRepository.updateRosterVersion(notebookIds);
+    }
+
+    public List<UUID> findStaleRosterNotebookIds(UUID afterId, int size) {
+        return notebookRepository.findIdsWithStaleRosterAfter(afterId, PageRequest.ofSize(size));
+    }
+
+    public long countStaleRosterNotebooks(UUID afterId) {
+        return notebookRepository.countWithStaleRosterAfter(afterId);
+    }
+
+    //Rebuild the counters a write may have left behind, notebooks from before the counters included
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.DAYS)
+    public void repairMissingTaskCounters() {
+        var staleNotebookIds = notebookRepository.findIdsWithStaleMissingTaskCounters();
+        for (int x = 0; x < staleNotebookIds.size(); x += REPAIR_CHUNK_SIZE) {
+            notebookRepository.refreshMissingTaskCounters(
+                    staleNotebookIds.subList(x, Math.min(x + REPAIR_CHUNK_SIZE, staleNotebookIds.size()))
+            );
+        }
     }
 
     public void setLessonToNotebook(UUID notebookId, @NotNull LessonEntity lesson) { //Set lesson to a notebook
@@ -55,57 +183,126 @@ public class NotebookService {
         notebookOptional.ifPresent(work::setNotebook);
     }
 
+    //Missing tasks of all the teacher notebooks, the counters skip the notebooks that have none
     public MissingTasksModel verifyAllMissingTasks(UUID teacherId) {
-        var notebooks = notebookRepository.findByUserId(teacherId);
-        List<MissingTaskLessonModel> allMissingLessons = new ArrayList<>();
-        List<MissingTaskWorkModel> allMissingWorks = new ArrayList<>();
-
-        for (NotebookEntity notebook:
-                notebooks) {
-            var missingTasks = verifyMissingTasksByNotebook(notebook);
-            allMissingLessons.addAll(missingTasks.getMissingLessons());
-            allMissingWorks.addAll(missingTasks.getMissingWorks());
+        var notebookIds = notebookRepository.findIdsWithMissingTasksByUserId(teacherId);
+        if (notebookIds.isEmpty()) return new MissingTasksModel(new ArrayList<>(), new ArrayList<>());
+        return verifyMissingTasksByNotebooks(notebookIds);
+    }
+
+    public MissingTasksModel verifyMissingTasksByNotebook(UUID notebookId) {
+        return verifyMissingTasksByNotebooks(List.of(notebookId));
+    }
+
+    private @NotNull MissingTasksModel verifyMissingTasksByNotebooks(List<UUID> notebookIds) {
+        return new MissingTasksModel(
+                notebookRepository.findMissingTaskLessons(notebookIds),
+                notebookRepository.findMissingTaskWorks(notebookIds)
+        );
+    }
+
+    //Same averages as the 'Médias' sheet, computed from grade sums without loading or closing the notebook
+    public List<StudentAverageModel> previewAverages(UUID notebookId, Map<String, Integer> workTypeWeights) {
+        var gradeSums = notebookRepository.sumGradesByStudentAndWorkType(notebookId);
+        List<StudentAverageModel> studentAverages = new ArrayList<>();
+        Map<String, GradeSumModel> studentGradeSums = new HashMap<>();
+
+        for (int x = 0; x < gradeSums.size(); x++) {
+            var gradeSum = gradeSums.get(x);
+            if (gradeSum.getWorkType() != null) studentGradeSums.put(gradeSum.getWorkType().name(), gradeSum);
+
+            //Rows come ordered by student, the average is computed on the student's last row
+            var isStudentLastRow = x == gradeSums.size() - 1 ||
+                    !gradeSums.get(x + 1).getStudentId().equals(gradeSum.getStudentId());
+            if (!isStudentLastRow) continue;
+
+            studentAverages.add(computeStudentAverage(
+                    studentAverages.size() + 1, gradeSum.getStudentName(), studentGradeSums, workTypeWeights));
+            studentGradeSums.clear();
         }
 
-        return new MissingTasksModel(allMissingLessons, allMissingWorks);
-    }
-
-    public MissingTasksModel verifyMissingTasksByNotebook(@NotNull NotebookEntity notebook) {
-        List<MissingTaskLessonModel> missingLessons = new ArrayList<>();
-        List<MissingTaskWorkModel> missingWorks = new ArrayList<>();
-        for (LessonEntity lesson:
-                notebook.getLessons()) {
-            if (lesson.getAttendances().isEmpty()) {
-                missingLessons.add(new MissingTaskLessonModel(
-                        lesson.getId(),
-                        lesson.getTitle(),
-                        notebook.getId()
-                ));
-            }
+        return studentAverages;
+    }
+
+    private static @NotNull StudentAverageModel computeStudentAverage(
+            Integer attendanceNumber,
+            String name,
+            Map<String, GradeSumModel> gradeSumsByType,
+            @NotNull Map<String, Integer> workTypeWeights
+    ) {
+        Map<String, Double> averages = new LinkedHashMap<>();
+        var finalGrade = 0.0;
+
+        for (Map.Entry<String, Integer> map:
+                workTypeWeights.entrySet()) {
+            if (map.getValue() <= 0) continue;
+            var gradeSum = gradeSumsByType.get(map.getKey());
+            var gradesSum = gradeSum == null ? 0.0 : Objects.requireNonNullElse(gradeSum.getGradesSum(), 0.0);
+            var quantity = gradeSum == null ? 0 : gradeSum.getGradesCount();
+
+            averages.put(map.getKey(), NotebookUtils.roundToHalfPoint(gradesSum / quantity));
+            finalGrade += (gradesSum * map.getValue()) / quantity;
         }
-        for (WorkEntity work:
-                notebook.getWorks()) {
-            if (work.getGrades().size() != notebook.getStudents().size()) {
-                missingWorks.add(new MissingTaskWorkModel(
-                        work.getId(),
-                        work.getTitle(),
-                        notebook.getId()
-                ));
-            }
+
+        return new StudentAverageModel(
+                attendanceNumber, name, averages, NotebookUtils.roundToHalfPoint(finalGrade / 10));
+    }
+
+    //Finish notebook and write its spreadsheet to the download file
+    public void finalizeNotebookToFile(
+            @NotNull NotebookEntity notebook,
+            Map<String, Integer> workTypeWeights,
+            @NotNull Path downloadFile
+    ) throws IOException {
+        exportNotebookToFile(notebook, workTypeWeights, downloadFile);
+        closeNotebook(notebook);
+    }
+
+    //Write the notebook spreadsheet to a download file of its own, linked to the cached one if nothing changed
+    public void exportNotebookToFile(
+            @NotNull NotebookEntity notebook,
+            Map<String, Integer> workTypeWeights,
+            @NotNull Path downloadFile
+    ) throws IOException {
+        var dataVersion = Objects.requireNonNullElse(notebook.getDataVersion(), 0L);
+
+        var cachedFile = notebookFileCacheService.findFile(notebook.getId(), dataVersion, workTypeWeights);
+        if (cachedFile.isPresent() && notebookFileCacheService.linkFile(cachedFile.get(), downloadFile)) return;
+
+        //Linked before it is stored, so the download doesn't depend on the cached file staying
+        var file = generateNotebookFile(notebook, workTypeWeights);
+        try {
+            notebookFileCacheService.linkFile(file, downloadFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
         }
-        return new MissingTasksModel(missingLessons, missingWorks);
+        notebookFileCacheService.storeFile(notebook.getId(), dataVersion, workTypeWeights, file);
     }
 
-    //Finish notebook and return all students average
-    public ByteArrayResource finalizeNotebook(NotebookEntity notebook, Map<String, Integer> workTypeWeights) throws IOException {
-        var finalizedNotebook = NotebookUtils.finalizeNotebook(notebook, workTypeWeights);
-        var byteArrayResource = new ByteArrayResource(finalizedNotebook.toByteArray());
+    private @NotNull Path generateNotebookFile(
+            @NotNull NotebookEntity notebook,
+            Map<String, Integer> workTypeWeights
+    ) throws IOException {
+        var file = notebookFileCacheService.createTempFile();
+        try (var outputStream = Files.newOutputStream(file)) {
+            NotebookUtils.finalizeNotebook(notebook, workTypeWeights, sheetExecutor, outputStream);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
 
+    //The roster the spreadsheet was made with becomes the notebook snapshot, later class changes leave it as is
+    private void closeNotebook(@NotNull NotebookEntity notebook) {
+        notebook.setRosterSnapshot(new ArrayList<>(notebook.getStudents()));
+        notebook.setRosterVersion(classRosterRepository.findById(notebook.getClasse())
+                .map(ClassRosterEntity::getVersion)
+                .orElse(0L));
         notebook.setStatus(StatusEnum.OFF);
         notebook.setEndDate(LocalDate.now(ZoneId.of("UTC-3")));
         saveNotebook(notebook);
-
-        return byteArrayResource;
     }
 
 }
@@ -0,0 +1,123 @@
+package com.api.notebook.services;
+
+import com.api.notebook.enums.JobStatusEnum;
+import com.api.notebook.models.RefreshJobModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RefreshJobService {
+
+    private final NotebookService notebookService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${notebook.refresh.pool-size}")
+    private int poolSize;
+
+    @Value("${notebook.refresh.chunk-size}")
+    private int chunkSize;
+
+    //Kept by the instance running it like the export jobs, a job started on another instance isn't seen
+    private volatile RefreshJobModel lastJob;
+    private ExecutorService coordinatorExecutor;
+    private ExecutorService refreshExecutor;
+
+    @PostConstruct
+    public void startExecutors() { //One job at a time, its chunks run on the bounded pool
+        coordinatorExecutor = Executors.newSingleThreadExecutor();
+        refreshExecutor = Executors.newFixedThreadPool(poolSize);
+    }
+
+    @PreDestroy
+    public void stopExecutors() {
+        coordinatorExecutor.shutdownNow();
+        refreshExecutor.shutdownNow();
+    }
+
+    public Optional<RefreshJobModel> findLastJob() {
+        return Optional.ofNullable(lastJob);
+    }
+
+    //Start refreshing the stale roster notebooks after the given id, returns empty if a job is already running
+    public synchronized Optional<RefreshJobModel> submitRefreshJob(UUID resumeAfter) {
+        if (lastJob != null && (lastJob.getStatus() == JobStatusEnum.PENDING ||
+                lastJob.getStatus() == JobStatusEnum.RUNNING)) {
+            return Optional.empty();
+        }
+
+        var job = new RefreshJobModel();
+        job.setId(UUID.randomUUID());
+        job.setStatus(JobStatusEnum.PENDING);
+        job.setResumeAfter(resumeAfter);
+        job.setCreateDate(LocalDateTime.now(ZoneId.of("UTC-3")));
+        lastJob = job;
+
+        coordinatorExecutor.execute(() -> runRefreshJob(job));
+        return Optional.of(job);
+    }
+
+    private void runRefreshJob(@NotNull RefreshJobModel job) {
+        job.setStatus(JobStatusEnum.RUNNING);
+        Deque<RefreshChunk> pendingChunks = new ArrayDeque<>();
+        try {
+            job.setTotalNotebooks(notebookService.countStaleRosterNotebooks(job.getResumeAfter()));
+            var lastFetchedId = job.getResumeAfter();
+
+            while (true) {
+
+                //At most one chunk per worker is in flight, the next ids are read while they run
+                while (pendingChunks.size() < poolSize) {
+                    var notebookIds = notebookService.findStaleRosterNotebookIds(lastFetchedId, chunkSize);
+                    if (notebookIds.isEmpty()) break;
+                    lastFetchedId = notebookIds.get(notebookIds.size() - 1);
+                    pendingChunks.add(new RefreshChunk(
+                            refreshExecutor.submit(() -> refreshChunk(notebookIds)),
+                            lastFetchedId,
+                            notebookIds.size()
+                    ));
+                }
+                if (pendingChunks.isEmpty()) break;
+
+                //Chunks are confirmed in order, so the resume point never skips an unfinished one
+                var chunk = pendingChunks.poll();
+                chunk.future().get();
+                job.setRefreshedNotebooks(job.getRefreshedNotebooks() + chunk.size());
+                job.setResumeAfter(chunk.lastId());
+            }
+            job.setStatus(JobStatusEnum.DONE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Refresh job {} interrupted after notebook {}", job.getId(), job.getResumeAfter());
+            job.setErrorMessage("Atualização interrompida!");
+            job.setStatus(JobStatusEnum.FAILED);
+        } catch (Exception e) {
+            var cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e; //Thrown by a chunk
+            log.error("Refresh job {} failed after notebook {}", job.getId(), job.getResumeAfter(), cause);
+            job.setErrorMessage("Erro ao atualizar as cadernetas: " + cause);
+            job.setStatus(JobStatusEnum.FAILED);
+        } finally {
+            pendingChunks.forEach(chunk -> chunk.future().cancel(true));
+        }
+    }
+
+    //Each chunk in its own transaction, nothing is kept in the persistence context from one to the next
+    private void refreshChunk(List<UUID> notebookIds) {
+        transactionTemplate.executeWithoutResult(status -> notebookService.refreshNotebooks(notebookIds));
+    }
+
+    private record RefreshChunk(Future<?> future, UUID lastId, int size) {}
+
+}
@@ -1,25 +1,33 @@
 package com.api.notebook.services;
 
 import com.api.notebook.enums.ClassEnum;
-import com.api.notebook.models.entities.AttendanceEntity;
-import com.api.notebook.models.entities.GradeEntity;
-import com.api.notebook.models.entities.NotebookEntity;
+import com.api.notebook.models.entities.ClassRosterEntity;
 import com.api.notebook.models.entities.StudentEntity;
+import com.api.notebook.repositories.ClassRosterRepository;
 import com.api.notebook.repositories.StudentRepository;
 import com.api.notebook.utils.StudentComparator;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class StudentService {
 
     private final StudentRepository studentRepository;
+    private final ClassRosterRepository classRosterRepository;
+    private final TransactionTemplate transactionTemplate;
     private final StudentComparator studentComparator = new StudentComparator();
 
+    //One lock per class, numbers of a class are read and shifted by one write at a time
+    private final Map<ClassEnum, Lock> classeLocks = createClasseLocks();
+
     public void saveStudent(StudentEntity student) {
         studentRepository.save(student);
     }
@@ -28,10 +36,8 @@ public class StudentService {
         studentRepository.saveAll(students);
     }
 
-    public List<StudentEntity> findAllStudents() {
-        var all = studentRepository.findAll();
-        all.sort(Comparator.comparing(StudentEntity::getNumber));
-        return all;
+    public Stream<StudentEntity> streamAllStudents() {
+        return studentRepository.streamAll();
     }
 
     public List<StudentEntity> findAllStudentsByClasse(ClassEnum classe) {
@@ -44,44 +50,75 @@ public class StudentService {
         return studentRepository.findById(id);
     }
 
-    public void deleteStudentById(UUID id) {
-        studentRepository.deleteById(id);
+    //Add the student at the end of the class, or in alphabetical order among the ordered students
+    public void createStudent(@NotNull StudentEntity student) {
+        runWithClasseLock(student.getClasse(), () -> {
+            if (Boolean.TRUE.equals(student.getIsOrder())) {
+                student.setNumber(findOrderedNumber(student));
+                studentRepository.shiftNumbers(student.getClasse(), student.getNumber(), 1);
+            } else {
+                student.setNumber(studentRepository.findMaxNumberByClasse(student.getClasse()) + 1);
+            }
+            studentRepository.save(student);
+            incrementRosterVersion(student.getClasse());
+        });
     }
 
-    //Set present students to an attendance
-    public void setPresentStudentsToAttendance(@NotNull List<UUID> presentStudentsIds, AttendanceEntity attendance) {
-        List<StudentEntity> presentStudents = new ArrayList<>();
-        for (UUID studentId:
-                presentStudentsIds) {
-            var studentOptional = findStudentById(studentId);
-            if (studentOptional.isPresent()) {
-                presentStudents.add(studentOptional.get());
-            }
-        }
-        attendance.setPresentStudents(presentStudents);
+    //Delete the student and close the gap in the class numbers
+    public void deleteStudent(@NotNull StudentEntity student) {
+        runWithClasseLock(student.getClasse(), () -> {
+            var studentOptional = findStudentById(student.getId()); //Number read again, it may have moved
+            if (studentOptional.isEmpty()) return;
+
+            studentRepository.deleteById(student.getId());
+            studentRepository.shiftNumbers(student.getClasse(), studentOptional.get().getNumber() + 1, -1);
+            incrementRosterVersion(student.getClasse());
+        });
     }
 
-    //Set absent students to an attendance
-    public void setAbsentStudentsToAttendance(@NotNull List<UUID> absentStudentsIds, AttendanceEntity attendance) {
-        List<StudentEntity> absentStudents = new ArrayList<>();
-        for (UUID studentId:
-                absentStudentsIds) {
-            var studentOptional = findStudentById(studentId);
-            if (studentOptional.isPresent()) {
-                absentStudents.add(studentOptional.get());
-            }
+    public List<StudentEntity> findRosterByNotebookId(UUID notebookId) {
+        return studentRepository.findRosterByNotebookId(notebookId);
+    }
+
+    //Notebooks read the class roster directly, a new version is all a student change writes for them
+    private void incrementRosterVersion(ClassEnum classe) {
+        if (classRosterRepository.incrementVersion(classe) > 0) return;
+
+        var classRoster = new ClassRosterEntity();
+        classRoster.setClasse(classe);
+        classRoster.setVersion(1L);
+        classRosterRepository.save(classRoster);
+    }
+
+    //Number of the first ordered student the new one comes before, the names order follows the comparator
+    private int findOrderedNumber(StudentEntity student) {
+        var orderedStudents = studentRepository.findAllByClasseAndIsOrderTrue(student.getClasse());
+        orderedStudents.sort(studentComparator);
+        for (StudentEntity orderedStudent:
+                orderedStudents) {
+            if (studentComparator.compare(orderedStudent, student) >= 0) return orderedStudent.getNumber();
         }
-        attendance.setAbsentStudents(absentStudents);
+        return orderedStudents.isEmpty() ? 1 : orderedStudents.get(orderedStudents.size() - 1).getNumber() + 1;
     }
 
-    public void setStudentToGrade(UUID studentId, @NotNull GradeEntity grade) { //Set student to a grade
-        var studentOptional = findStudentById(studentId);
-        studentOptional.ifPresent(grade::setStudent);
+    //The lock is released only after the commit, so the next write reads the committed numbers
+    private void runWithClasseLock(ClassEnum classe, Runnable write) {
+        var lock = classeLocks.get(classe);
+        lock.lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> write.run());
+        } finally {
+            lock.unlock();
+        }
     }
 
-    //Set students to notebook by class enum
-    public void setStudentsToNotebookByClass(ClassEnum classEnum, @NotNull NotebookEntity notebook) {
-        notebook.setStudents(studentRepository.findAllByClasse(classEnum));
+    private static @NotNull Map<ClassEnum, Lock> createClasseLocks() {
+        Map<ClassEnum, Lock> classeLocks = new EnumMap<>(ClassEnum.class);
+        for (ClassEnum classe:
+                ClassEnum.values()) {
+            classeLocks.put(classe, new ReentrantLock());
+        }
+        return classeLocks;
     }
 
 }
@@ -17,6 +17,7 @@ import org.springframework.stereotype.Service;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +25,7 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final NotebookOwnershipService notebookOwnershipService;
 
     public UserEntity createUser(@NotNull UserEntity user) {
         user.setPassword(passwordEncoder.encode(user.getPassword()));
@@ -34,8 +36,8 @@ public class UserService {
         userRepository.save(user);
     }
 
-    public List<UserEntity> findAllUsers() {
-        return userRepository.findAll();
+    public Stream<UserEntity> streamAllUsers() {
+        return userRepository.streamAll();
     }
 
     public List<UserEntity> findAllUsersByRole(RoleEnum role) { return userRepository.findAllByRole(role); }
@@ -54,6 +56,7 @@ public class UserService {
 
     public void deleteUserById(UUID id) {
         userRepository.deleteById(id);
+        notebookOwnershipService.invalidateOwner(id);
     }
 
     //Try to authenticate user
@@ -68,7 +71,7 @@ public class UserService {
             return new AuthTryModel(AuthTryEnum.INCORRECT_PASSWORD, null);
         }
 
-        var token = jwtService.generateToken(userOptional.get().getEmail());
+        var token = jwtService.generateToken(userOptional.get());
         return new AuthTryModel(AuthTryEnum.OK, new AuthReturnModel(userOptional.get().getId(), token));
     }
 
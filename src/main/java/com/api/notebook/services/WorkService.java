@@ -1,37 +1,54 @@
 package com.api.notebook.services;
 
-import com.api.notebook.models.entities.GradeEntity;
+import com.api.notebook.enums.WorksEnum;
 import com.api.notebook.models.entities.WorkEntity;
 import com.api.notebook.repositories.WorkRepository;
+import com.api.notebook.utils.ScrollUtils;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
-import java.util.Comparator;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class WorkService {
 
+    //Fields the works listing can be sorted by, with their types to read cursors back
+    public static final Map<String, ScrollUtils.SortField> SORT_FIELDS = Map.of(
+            "deliveryDate", new ScrollUtils.SortField("sortDeliveryDate", LocalDate.class),
+            "title", new ScrollUtils.SortField("title", String.class),
+            "type", new ScrollUtils.SortField("type", WorksEnum.class)
+    );
+
     private final WorkRepository workRepository;
 
     public void saveWork(WorkEntity work) {
         workRepository.save(work);
     }
 
-    public List<WorkEntity> findAllWorks() {
-        var workList = workRepository.findAll();
-        workList.sort(Comparator.comparing(WorkEntity::getDeliveryDate).reversed());
-        return workList;
+    public Stream<WorkEntity> streamAllWorks() {
+        return workRepository.streamAll();
     }
 
-    public Page<WorkEntity> findAllWorksByNotebookId(UUID notebookId, Pageable pageable) {
-        return workRepository.findByNotebookId(notebookId, pageable);
+    //Slice of the notebook works after the given position, the keyset keeps deep slices as cheap as the first
+    public Window<WorkEntity> findAllWorksByNotebookId(
+            UUID notebookId,
+            Sort sort,
+            ScrollPosition position,
+            int size
+    ) {
+        return workRepository.findBy(
+                (Specification<WorkEntity>) (root, query, builder) ->
+                        builder.equal(root.get("notebook").get("id"), notebookId),
+                query -> query.sortBy(sort).limit(size).scroll(position)
+        );
     }
 
     public Optional<WorkEntity> findWorkById(UUID id) {
@@ -42,17 +59,4 @@ public class WorkService {
         workRepository.deleteById(id);
     }
 
-    public void setGradeToWork(UUID workId, @NotNull GradeEntity grade) { //Set grade to a work
-        var workOptional = findWorkById(workId);
-        if(workOptional.isPresent()) {
-            for (GradeEntity gradeLoop:
-                    workOptional.get().getGrades()) {
-                if (gradeLoop.getStudent().equals(grade.getStudent())) {
-                    grade.setId(gradeLoop.getId());
-                }
-            }
-            grade.setWork(workOptional.get());
-        }
-    }
-
 }
@@ -0,0 +1,63 @@
+package com.api.notebook.utils;
+
+import com.api.notebook.models.entities.AttendanceEntity;
+import com.api.notebook.models.entities.LessonEntity;
+import com.api.notebook.models.entities.StudentEntity;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+public class AttendanceIndex {
+
+    //One bitset per lesson slot, each bit is a student position in the roster
+    private final List<BitSet[]> lessonsSlots;
+
+    private AttendanceIndex(List<BitSet[]> lessonsSlots) {
+        this.lessonsSlots = lessonsSlots;
+    }
+
+    //Build the index once, students and lessons must already be in the sheet order
+    public static @NotNull AttendanceIndex of(
+            @NotNull List<StudentEntity> students,
+            @NotNull List<LessonEntity> lessons
+    ) {
+        var rosterPositions = NotebookUtils.mapRosterPositions(students);
+
+        List<BitSet[]> lessonsSlots = new ArrayList<>(lessons.size());
+        for (LessonEntity lesson:
+                lessons) {
+            var attendances = lesson.getAttendances();
+            var slots = new BitSet[attendances.size()];
+
+            for (int x = 0; x < attendances.size(); x++) {
+                slots[x] = toBitSet(attendances.get(x), rosterPositions, students.size());
+            }
+            lessonsSlots.add(slots);
+        }
+
+        return new AttendanceIndex(lessonsSlots);
+    }
+
+    private static @NotNull BitSet toBitSet(
+            @NotNull AttendanceEntity attendance,
+            Map<UUID, Integer> rosterPositions,
+            int rosterSize
+    ) {
+        var presentStudents = new BitSet(rosterSize);
+        for (UUID studentId:
+                attendance.getPresentStudentsIds()) {
+            var position = rosterPositions.get(studentId);
+            if (position != null) presentStudents.set(position);
+        }
+        return presentStudents;
+    }
+
+    public boolean hasAttendances(int lessonIndex) {
+        return lessonsSlots.get(lessonIndex).length > 0;
+    }
+
+    public boolean isPresent(int studentPosition, int lessonIndex, int slot) {
+        return lessonsSlots.get(lessonIndex)[slot].get(studentPosition);
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.api.notebook.utils;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.jetbrains.annotations.NotNull;
+
+public class CellStyleRegistry {
+
+    //Styles are created once per workbook and shared by every cell that uses them
+    private final Workbook workbook;
+
+    private CellStyle headerStyle;
+    private CellStyle centralizedStyle;
+
+    public CellStyleRegistry(@NotNull Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    public CellStyle getHeaderStyle() { //Bold and centralized style for sheet headers
+        if (headerStyle == null) {
+            var fontStyle = workbook.createFont();
+            fontStyle.setBold(true);
+
+            headerStyle = workbook.createCellStyle();
+            headerStyle.setFont(fontStyle);
+            headerStyle.setAlignment(HorizontalAlignment.CENTER);
+        }
+        return headerStyle;
+    }
+
+    public CellStyle getCentralizedStyle() { //Centralized style for sheet data cells
+        if (centralizedStyle == null) {
+            centralizedStyle = workbook.createCellStyle();
+            centralizedStyle.setAlignment(HorizontalAlignment.CENTER);
+        }
+        return centralizedStyle;
+    }
+
+}
@@ -28,34 +28,4 @@ public class ExcelUtils {
         cell.setCellValue(value);
     }
 
-    public static void setSheetHeaderRowStyles(@NotNull Workbook workbook, @NotNull Row row) {
-
-        var style = workbook.createCellStyle();
-        var fontStyle = workbook.createFont();
-        fontStyle.setBold(true);
-        style.setFont(fontStyle);
-        style.setAlignment(HorizontalAlignment.CENTER);
-
-        for (int x = 0; x < row.getLastCellNum(); x++) {
-            if (row.getCell(x) == null) continue;
-            row.getCell(x).setCellStyle(style);
-        }
-    }
-
-    public static void setGlobalCellCentralizedStyle(@NotNull Workbook workbook, @NotNull Sheet sheet, int initIndex) {
-
-        var style = workbook.createCellStyle();
-        style.setAlignment(HorizontalAlignment.CENTER);
-
-        for (int x = initIndex; x < sheet.getLastRowNum() + 1; x++) {
-            if (sheet.getRow(x) == null) continue;
-
-            for (int y = 0; y < sheet.getRow(x).getLastCellNum(); y++) {
-                if(sheet.getRow(x).getCell(y) == null) continue;
-
-                sheet.getRow(x).getCell(y).setCellStyle(style);
-            }
-        }
-    }
-
 }
@@ -0,0 +1,78 @@
+package com.api.notebook.utils;
+
+import com.api.notebook.enums.WorksEnum;
+import com.api.notebook.models.entities.GradeEntity;
+import com.api.notebook.models.entities.StudentEntity;
+import com.api.notebook.models.entities.WorkEntity;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+public class GradeMatrix {
+
+    private static final int[] NO_WORKS = new int[0];
+
+    //Grades by student position and work position, NaN when the student has no grade
+    private final double[][] grades;
+
+    //Work positions grouped by type, kept in the notebook works order
+    private final Map<WorksEnum, int[]> worksByType;
+
+    private GradeMatrix(double[][] grades, Map<WorksEnum, int[]> worksByType) {
+        this.grades = grades;
+        this.worksByType = worksByType;
+    }
+
+    //Build the matrix in one pass over the grades, students and works must already be in the sheet order
+    public static @NotNull GradeMatrix of(
+            @NotNull List<StudentEntity> students,
+            @NotNull List<WorkEntity> works
+    ) {
+        var rosterPositions = NotebookUtils.mapRosterPositions(students);
+
+        var grades = new double[students.size()][works.size()];
+        for (double[] studentGrades:
+                grades) {
+            Arrays.fill(studentGrades, Double.NaN);
+        }
+
+        Map<WorksEnum, List<Integer>> worksPositionsByType = new EnumMap<>(WorksEnum.class);
+        for (int x = 0; x < works.size(); x++) {
+            var work = works.get(x);
+            worksPositionsByType.computeIfAbsent(work.getType(), type -> new ArrayList<>()).add(x);
+
+            for (GradeEntity grade:
+                    work.getGrades()) {
+                var position = rosterPositions.get(grade.getStudent().getId());
+                if (position == null) continue;
+
+                //Keep the first grade found, like the sheets always did
+                if (Double.isNaN(grades[position][x])) grades[position][x] = grade.getGrade();
+            }
+        }
+
+        Map<WorksEnum, int[]> worksByType = new EnumMap<>(WorksEnum.class);
+        worksPositionsByType.forEach((type, positions) -> worksByType.put(
+                type, positions.stream().mapToInt(Integer::intValue).toArray()));
+
+        return new GradeMatrix(grades, worksByType);
+    }
+
+    //Get the work positions of a type by its name, unknown names have no works
+    public int[] getWorksOfType(String type) {
+        for (WorksEnum worksEnum:
+                WorksEnum.values()) {
+            if (worksEnum.name().equals(type)) return worksByType.getOrDefault(worksEnum, NO_WORKS);
+        }
+        return NO_WORKS;
+    }
+
+    public boolean hasGrade(int studentPosition, int workPosition) {
+        return !Double.isNaN(grades[studentPosition][workPosition]);
+    }
+
+    public double getGrade(int studentPosition, int workPosition) {
+        return grades[studentPosition][workPosition];
+    }
+
+}
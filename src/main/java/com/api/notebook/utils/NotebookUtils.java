@@ -1,58 +1,142 @@
 package com.api.notebook.utils;
 
+import com.api.notebook.models.SheetModel;
 import com.api.notebook.models.entities.*;
 import com.api.notebook.services.LessonService;
 import com.api.notebook.services.NotebookService;
 import com.api.notebook.services.WorkService;
 import lombok.RequiredArgsConstructor;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class NotebookUtils {
 
-    public static @NotNull ByteArrayOutputStream finalizeNotebook(
+    //Rows kept in memory per sheet, older rows are flushed to a temp file
+    private static final int ROW_ACCESS_WINDOW_SIZE = 100;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    //Build the notebook workbook and write it straight to the provided output stream
+    public static void finalizeNotebook(
             @NotNull NotebookEntity notebook,
-            Map<String, Integer> workTypeWeights
+            Map<String, Integer> workTypeWeights,
+            @NotNull Executor sheetExecutor,
+            @NotNull OutputStream outputStream
     ) throws IOException {
-        var byteArrayOutputStream = new ByteArrayOutputStream();
-        var notebookWorkbook = new XSSFWorkbook();
-
         notebook.getStudents().sort(Comparator.comparing(StudentEntity::getNumber));
         notebook.getLessons().sort(Comparator.comparing(LessonEntity::getDate));
         notebook.getWorks().sort(Comparator.comparing(WorkEntity::getDeliveryDate));
 
-        createFrequenciasSheet(notebookWorkbook, notebook);
-        createMediasSheet(notebookWorkbook, notebook, workTypeWeights);
-        createObservacoesSheet(notebookWorkbook, notebook);
-        createFerramentasDeAvaliacaoSheet(notebookWorkbook, notebook, workTypeWeights);
+        //Indexes load every lazy collection, so they stay on the persistence context thread
+        var attendanceIndex = AttendanceIndex.of(notebook.getStudents(), notebook.getLessons());
+        var gradeMatrix = GradeMatrix.of(notebook.getStudents(), notebook.getWorks());
+
+        //Layout phase: sheets headers, widths and merged regions are computed in parallel from the loaded data
+        var frequenciasSheet = CompletableFuture.supplyAsync(
+                () -> buildFrequenciasSheet(notebook, attendanceIndex), sheetExecutor);
+        var mediasSheet = CompletableFuture.supplyAsync(
+                () -> buildMediasSheet(notebook, workTypeWeights, gradeMatrix), sheetExecutor);
+        var observacoesSheet = CompletableFuture.supplyAsync(
+                () -> buildObservacoesSheet(notebook), sheetExecutor);
+        var ferramentasSheet = CompletableFuture.supplyAsync(
+                () -> buildFerramentasDeAvaliacaoSheet(notebook, workTypeWeights, gradeMatrix), sheetExecutor);
+
+        //Rendering phase: sheets are written to the workbook in order on this thread, building each row as it goes
+        var notebookWorkbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
+        notebookWorkbook.setCompressTempFiles(true);
+
+        try {
+            var cellStyles = new CellStyleRegistry(notebookWorkbook);
+
+            renderSheet(notebookWorkbook, cellStyles, frequenciasSheet.join());
+            renderSheet(notebookWorkbook, cellStyles, mediasSheet.join());
+            renderSheet(notebookWorkbook, cellStyles, observacoesSheet.join());
+            renderSheet(notebookWorkbook, cellStyles, ferramentasSheet.join());
+
+            notebookWorkbook.write(outputStream);
+        } finally {
+            notebookWorkbook.dispose(); //Delete the temp files backing the flushed rows
+            notebookWorkbook.close();
+        }
+    }
 
-        notebookWorkbook.write(byteArrayOutputStream);
+    //Map each student id to its position in the sorted roster
+    static @NotNull Map<UUID, Integer> mapRosterPositions(@NotNull List<StudentEntity> students) {
+        Map<UUID, Integer> rosterPositions = new HashMap<>();
+        for (int x = 0; x < students.size(); x++) {
+            rosterPositions.put(students.get(x).getId(), x);
+        }
+        return rosterPositions;
+    }
 
-        return byteArrayOutputStream;
+    //Round a grade to the nearest half point, like the 'Médias' sheet shows it
+    public static double roundToHalfPoint(double grade) {
+        return (double) Math.round(grade * 2) / 2;
     }
 
-    private static void createFrequenciasSheet(
-            @NotNull XSSFWorkbook workbook,
-            @NotNull NotebookEntity notebook
+    private static void renderSheet(
+            @NotNull Workbook workbook,
+            @NotNull CellStyleRegistry cellStyles,
+            @NotNull SheetModel sheetModel
+    ) {
+        var sheet = workbook.createSheet(sheetModel.getName());
+        sheetModel.getColumnWidths().forEach(sheet::setColumnWidth);
+
+        var rowCount = 0;
+        for (String[] headerRow:
+                sheetModel.getHeaderRows()) {
+            renderRow(sheet.createRow(rowCount), headerRow, cellStyles.getHeaderStyle());
+            rowCount++;
+        }
+        for (int x = 0; x < sheetModel.getRowsCount(); x++) {
+            renderRow(sheet.createRow(rowCount), sheetModel.getRowBuilder().apply(x), cellStyles.getCentralizedStyle());
+            rowCount++;
+        }
+
+        sheetModel.getMergedRegions().forEach(sheet::addMergedRegion);
+    }
+
+    private static void renderRow(Row row, String @NotNull [] cells, CellStyle cellStyle) {
+        for (int x = 0; x < cells.length; x++) {
+            if (cells[x] == null) continue;
+            ExcelUtils.createRowCell(row, x, cells[x], cellStyle);
+        }
+    }
+
+    static @NotNull SheetModel buildFrequenciasSheet(
+            @NotNull NotebookEntity notebook,
+            @NotNull AttendanceIndex attendanceIndex
     ) {
-        var frequenciasSheet = workbook.createSheet("Frequências");
+        var frequenciasSheet = new SheetModel("Frequências");
+
+        //Each lesson takes at least one column, and one per attendance slot
+        var columnsCount = 2;
+        for (LessonEntity lesson:
+                notebook.getLessons()) {
+            columnsCount += Math.max(lesson.getQuantity(), 1);
+        }
 
         //Creating sheet header
-        var firstRow = frequenciasSheet.createRow(0);
-        ExcelUtils.createRowCell(firstRow, 0, "Número");
-        ExcelUtils.createRowCell(firstRow, 1, "Aluno");
+        var firstRow = new String[columnsCount];
+        firstRow[0] = "Número";
+        firstRow[1] = "Aluno";
+        frequenciasSheet.getHeaderRows().add(firstRow);
         //Creating sheet header
 
         //Setting columns settings
@@ -60,10 +144,6 @@ public class NotebookUtils {
         frequenciasSheet.setColumnWidth(1, (int) (33 * 1.5 * 256));
         //Setting Columns settings
 
-        //Creating date formatter
-        var dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        //Creating date formatter
-
         //Setting lessons date in the sheet header
         var cellCount = 2;
         for(LessonEntity lesson:
@@ -73,7 +153,7 @@ public class NotebookUtils {
                 frequenciasSheet.setColumnWidth(cellCount, (int) ((10 * 1.5 * 256) / 2));
                 frequenciasSheet.setColumnWidth(cellCount + 1, (int) ((10 * 1.5 * 256) / 2));
 
-                ExcelUtils.createRowCell(firstRow, cellCount, dateFormatter.format(lesson.getDate()));
+                firstRow[cellCount] = DATE_FORMATTER.format(lesson.getDate());
                 frequenciasSheet.addMergedRegion(new CellRangeAddress(
                         0, 0, cellCount, cellCount + 1));
                 cellCount += 2;
@@ -81,55 +161,66 @@ public class NotebookUtils {
             }
 
             frequenciasSheet.setColumnWidth(cellCount, (int) (10 * 1.5 * 256));
-            ExcelUtils.createRowCell(firstRow, cellCount, dateFormatter.format(lesson.getDate()));
+            firstRow[cellCount] = DATE_FORMATTER.format(lesson.getDate());
             cellCount++;
         }
         //Setting lessons date in the sheet header
 
-        var studentRowCount = 1;
-        var studentNumberCount = 1;
-        for (StudentEntity student:
-                notebook.getStudents()) {
-            var studentRow = frequenciasSheet.createRow(studentRowCount);
-            studentRowCount++;
-
-            ExcelUtils.createRowCell(studentRow, 0, String.valueOf(studentNumberCount));
-            ExcelUtils.createRowCell(studentRow, 1, student.getName());
-            studentNumberCount++;
-
-            var studentCellCount = 2;
-            for (LessonEntity lesson:
-                    notebook.getLessons()) {
-                if (lesson.getAttendances().isEmpty()) {
-                    if (lesson.getQuantity() == 2) studentCellCount += 2;
-                    if (lesson.getQuantity() == 1) studentCellCount++;
-                    continue;
-                }
+        var rowColumnsCount = columnsCount;
+        frequenciasSheet.setRows(notebook.getStudents().size(), studentPosition ->
+                buildFrequenciasRow(notebook, attendanceIndex, rowColumnsCount, studentPosition));
 
-                for (int x = 0; x < lesson.getQuantity(); x++) {
-                    if (lesson.getAttendances().get(x).getPresentStudents().contains(student)) {
-                        ExcelUtils.createRowCell(studentRow, studentCellCount, "C");
-                    } else ExcelUtils.createRowCell(studentRow, studentCellCount, "F");
-                    studentCellCount++;
-                }
+        return frequenciasSheet;
+    }
+
+    private static String @NotNull [] buildFrequenciasRow(
+            @NotNull NotebookEntity notebook,
+            @NotNull AttendanceIndex attendanceIndex,
+            int columnsCount,
+            int studentPosition //Student position in the attendance index
+    ) {
+        var studentRow = new String[columnsCount];
+        studentRow[0] = String.valueOf(studentPosition + 1);
+        studentRow[1] = notebook.getStudents().get(studentPosition).getName();
+
+        var studentCellCount = 2;
+        for (int lessonIndex = 0; lessonIndex < notebook.getLessons().size(); lessonIndex++) {
+            var lesson = notebook.getLessons().get(lessonIndex);
+            if (!attendanceIndex.hasAttendances(lessonIndex)) {
+                if (lesson.getQuantity() == 2) studentCellCount += 2;
+                if (lesson.getQuantity() == 1) studentCellCount++;
+                continue;
             }
-        }
 
-        ExcelUtils.setSheetHeaderRowStyles(workbook, firstRow);
-        ExcelUtils.setGlobalCellCentralizedStyle(workbook, frequenciasSheet, 1);
+            for (int x = 0; x < lesson.getQuantity(); x++) {
+                if (attendanceIndex.isPresent(studentPosition, lessonIndex, x)) {
+                    studentRow[studentCellCount] = "C";
+                } else studentRow[studentCellCount] = "F";
+                studentCellCount++;
+            }
+        }
+        return studentRow;
     }
 
-    private static void createMediasSheet(
-            @NotNull XSSFWorkbook workbook,
+    static @NotNull SheetModel buildMediasSheet(
             NotebookEntity notebook,
-            @NotNull Map<String, Integer> workTypeWeights
+            @NotNull Map<String, Integer> workTypeWeights,
+            @NotNull GradeMatrix gradeMatrix
     ) {
-        var mediasSheet = workbook.createSheet("Médias");
+        var mediasSheet = new SheetModel("Médias");
+
+        var usedWorkTypesCount = 0;
+        for (Integer weight:
+                workTypeWeights.values()) {
+            if (weight > 0) usedWorkTypesCount++;
+        }
+        var columnsCount = 2 + usedWorkTypesCount + 1;
 
         //Creating sheet header
-        var firstRow = mediasSheet.createRow(0);
-        ExcelUtils.createRowCell(firstRow, 0, "Número");
-        ExcelUtils.createRowCell(firstRow, 1, "Aluno");
+        var firstRow = new String[columnsCount];
+        firstRow[0] = "Número";
+        firstRow[1] = "Aluno";
+        mediasSheet.getHeaderRows().add(firstRow);
         //Creating sheet header
 
         //Setting columns settings
@@ -145,75 +236,69 @@ public class NotebookUtils {
 
             mediasSheet.setColumnWidth(workTypeCellCount, (int) (11 * 1.5 * 256));
 
-            ExcelUtils.createRowCell(firstRow, workTypeCellCount, map.getKey());
+            firstRow[workTypeCellCount] = map.getKey();
             workTypeCellCount++;
         }
-        ExcelUtils.createRowCell(firstRow, workTypeCellCount, "MÉDIA");
+        firstRow[workTypeCellCount] = "MÉDIA";
         //setting work types in sheet header
 
         //Setting 'media' column width
         mediasSheet.setColumnWidth(workTypeCellCount, (int) (5 * 1.5 * 256));
         //Setting 'media' column width
 
-        var studentRowCount = 1;
-        var studentNumberCount = 1;
-        for (StudentEntity student:
-                notebook.getStudents()) {
-            var studentRow = mediasSheet.createRow(studentRowCount);
-            studentRowCount++;
-
-            ExcelUtils.createRowCell(studentRow, 0, String.valueOf(studentNumberCount));
-            ExcelUtils.createRowCell(studentRow, 1, student.getName());
-            studentNumberCount++;
-
-            var finalGrade = 0.0;
-
-            var studentGradeCellCount = 2;
-            for (Map.Entry<String, Integer> map:
-                    workTypeWeights.entrySet()) {
-                if (map.getValue() <= 0) continue;
-                var gradesSum = 0.0;
-                var quantity = 0;
-
-                for (WorkEntity work:
-                        notebook.getWorks()) {
-                    if(work.getType().toString().equals(map.getKey())) {
-                        for (GradeEntity grade:
-                                work.getGrades()) {
-                            if (grade.getStudent().equals(student)) {
-                                gradesSum += grade.getGrade();
-                                quantity++;
-                                break;
-                            }
-                        }
-                    }
-                }
+        var finalGradeCell = workTypeCellCount;
+        mediasSheet.setRows(notebook.getStudents().size(), studentPosition ->
+                buildMediasRow(notebook, workTypeWeights, gradeMatrix, columnsCount, finalGradeCell, studentPosition));
 
-                var approximateAverage = (double) Math.round((gradesSum / quantity) * 2) / 2;
-                ExcelUtils.createRowCell(studentRow, studentGradeCellCount, String.valueOf(approximateAverage));
-                studentGradeCellCount++;
+        return mediasSheet;
+    }
 
-                finalGrade += (gradesSum * map.getValue()) / quantity;
+    private static String @NotNull [] buildMediasRow(
+            @NotNull NotebookEntity notebook,
+            @NotNull Map<String, Integer> workTypeWeights,
+            @NotNull GradeMatrix gradeMatrix,
+            int columnsCount,
+            int finalGradeCell,
+            int studentPosition //Student position in the grade matrix
+    ) {
+        var studentRow = new String[columnsCount];
+        studentRow[0] = String.valueOf(studentPosition + 1);
+        studentRow[1] = notebook.getStudents().get(studentPosition).getName();
+
+        var finalGrade = 0.0;
+
+        var studentGradeCellCount = 2;
+        for (Map.Entry<String, Integer> map:
+                workTypeWeights.entrySet()) {
+            if (map.getValue() <= 0) continue;
+            var gradesSum = 0.0;
+            var quantity = 0;
+
+            for (int workPosition:
+                    gradeMatrix.getWorksOfType(map.getKey())) {
+                if (gradeMatrix.hasGrade(studentPosition, workPosition)) {
+                    gradesSum += gradeMatrix.getGrade(studentPosition, workPosition);
+                    quantity++;
+                }
             }
 
-            var approximateFinalGrade = (double) Math.round((finalGrade / 10) * 2) / 2;
-            ExcelUtils.createRowCell(studentRow, workTypeCellCount, String.valueOf(approximateFinalGrade));
+            var approximateAverage = roundToHalfPoint(gradesSum / quantity);
+            studentRow[studentGradeCellCount] = String.valueOf(approximateAverage);
+            studentGradeCellCount++;
+
+            finalGrade += (gradesSum * map.getValue()) / quantity;
         }
 
-        ExcelUtils.setSheetHeaderRowStyles(workbook, firstRow);
-        ExcelUtils.setGlobalCellCentralizedStyle(workbook, mediasSheet, 1);
+        var approximateFinalGrade = roundToHalfPoint(finalGrade / 10);
+        studentRow[finalGradeCell] = String.valueOf(approximateFinalGrade);
+        return studentRow;
     }
 
-    private static void createObservacoesSheet(
-            @NotNull XSSFWorkbook workbook,
-            @NotNull NotebookEntity notebook
-    ) {
-        var observacoesSheet = workbook.createSheet("Observações");
+    static @NotNull SheetModel buildObservacoesSheet(@NotNull NotebookEntity notebook) {
+        var observacoesSheet = new SheetModel("Observações");
 
         //Creating sheet header
-        var firstRow = observacoesSheet.createRow(0);
-        ExcelUtils.createRowCell(firstRow, 0, "Data");
-        ExcelUtils.createRowCell(firstRow, 1, "Observação");
+        observacoesSheet.getHeaderRows().add(new String[] {"Data", "Observação"});
         //Creating sheet header
 
         //Setting columns settings
@@ -221,39 +306,46 @@ public class NotebookUtils {
         observacoesSheet.setColumnWidth(1, (int) (100 * 1.5 * 256));
         //Setting Columns settings
 
-        var lessonRowCount = 1;
+        List<LessonEntity> observedLessons = new ArrayList<>();
         for (LessonEntity lesson:
                 notebook.getLessons()) {
             if (lesson.getObservations().isEmpty() && lesson.getObservations().isBlank()) continue;
-            var lessonRow = observacoesSheet.createRow(lessonRowCount);
-
-            ExcelUtils.createRowCell(lessonRow, 0, DateTimeFormatter.ofPattern("dd/MM/yyyy")
-                    .format(lesson.getDate()));
-            ExcelUtils.createRowCell(lessonRow, 1, lesson.getObservations());
-
-            lessonRowCount++;
+            observedLessons.add(lesson);
         }
+        observacoesSheet.setRows(observedLessons.size(), lessonPosition -> new String[] {
+                DATE_FORMATTER.format(observedLessons.get(lessonPosition).getDate()),
+                observedLessons.get(lessonPosition).getObservations()
+        });
 
-        ExcelUtils.setSheetHeaderRowStyles(workbook, firstRow);
-        ExcelUtils.setGlobalCellCentralizedStyle(workbook, observacoesSheet, 1);
+        return observacoesSheet;
     }
 
-    private static void createFerramentasDeAvaliacaoSheet(
-            @NotNull XSSFWorkbook workbook,
+    static @NotNull SheetModel buildFerramentasDeAvaliacaoSheet(
             NotebookEntity notebook,
-            @NotNull Map<String, Integer> workTypeWeights
+            @NotNull Map<String, Integer> workTypeWeights,
+            @NotNull GradeMatrix gradeMatrix
     ) {
-        var ferramentasSheet = workbook.createSheet("Ferramentas De Avaliação");
+        var ferramentasSheet = new SheetModel("Ferramentas De Avaliação");
+
+        //Each work takes a column, a type without works still gets its header cell
+        var columnsCount = 2;
+        for (Map.Entry<String, Integer> map:
+                workTypeWeights.entrySet()) {
+            if (map.getValue() <= 0) continue;
+            columnsCount += Math.max(gradeMatrix.getWorksOfType(map.getKey()).length, 1);
+        }
 
         //Create sheet header
-        var firstRow = ferramentasSheet.createRow(0);
-        var secondRow = ferramentasSheet.createRow(1);
+        var firstRow = new String[columnsCount];
+        var secondRow = new String[columnsCount];
+        ferramentasSheet.getHeaderRows().add(firstRow);
+        ferramentasSheet.getHeaderRows().add(secondRow);
         var worksTypeFirstRowCellCount = 2;
         var worksTypeSecondRowCellCount = 2;
 
         //Create second row of header
-        ExcelUtils.createRowCell(secondRow, 0, "Número");
-        ExcelUtils.createRowCell(secondRow, 1, "Aluno");
+        secondRow[0] = "Número";
+        secondRow[1] = "Aluno";
         //Create second row of header
 
         //Setting columns settings
@@ -265,22 +357,19 @@ public class NotebookUtils {
                 workTypeWeights.entrySet()) {
             if (map.getValue() <= 0) continue;
 
-            var worksCount = -1;
-            for (WorkEntity work:
-                    notebook.getWorks()) {
-                if (work.getType().toString().equals(map.getKey())) {
-
-                    //Create second row of header
-                    ExcelUtils.createRowCell(secondRow, worksTypeSecondRowCellCount, work.getTitle());
-                    worksTypeSecondRowCellCount++;
-                    //Create second row of header
+            var worksOfType = gradeMatrix.getWorksOfType(map.getKey());
+            var worksCount = worksOfType.length - 1;
+            for (int workPosition:
+                    worksOfType) {
 
-                    worksCount++;
-                }
+                //Create second row of header
+                secondRow[worksTypeSecondRowCellCount] = notebook.getWorks().get(workPosition).getTitle();
+                worksTypeSecondRowCellCount++;
+                //Create second row of header
             }
 
             //Create first row of header
-            ExcelUtils.createRowCell(firstRow, worksTypeFirstRowCellCount, map.getKey());
+            firstRow[worksTypeFirstRowCellCount] = map.getKey();
             if (worksCount > 0) {
                 ferramentasSheet.addMergedRegion(new CellRangeAddress(
                         0, 0,
@@ -299,47 +388,40 @@ public class NotebookUtils {
         }
         //Create sheet header
 
-        var studentRowCount = 2;
-        var studentNumberCount = 1;
-        for (StudentEntity student:
-                notebook.getStudents()) {
-
-            //Create student row
-            var studentRow = ferramentasSheet.createRow(studentRowCount);
-            studentRowCount++;
-            //Create student row
-
-            //Create student's firsts cells
-            ExcelUtils.createRowCell(studentRow, 0, String.valueOf(studentNumberCount));
-            ExcelUtils.createRowCell(studentRow, 1, student.getName());
-            studentNumberCount++;
-            //Create student's firsts cells
-
-            var studentCellCount = 2;
-            for (Map.Entry<String, Integer> map:
-                    workTypeWeights.entrySet()) {
-                if (map.getValue() <= 0) continue;
-                for (WorkEntity work:
-                        notebook.getWorks()) {
-                    if (work.getType().toString().equals(map.getKey())) {
-
-                        for(GradeEntity grade:
-                                work.getGrades()) {
-                            if (grade.getStudent().equals(student)) {
-                                ExcelUtils.createRowCell(
-                                        studentRow, studentCellCount, String.valueOf(grade.getGrade()));
-                                studentCellCount++;
-                                break;
-                            }
-                        }
-                    }
+        var rowColumnsCount = columnsCount;
+        ferramentasSheet.setRows(notebook.getStudents().size(), studentPosition ->
+                buildFerramentasDeAvaliacaoRow(notebook, workTypeWeights, gradeMatrix, rowColumnsCount, studentPosition));
+
+        return ferramentasSheet;
+    }
+
+    private static String @NotNull [] buildFerramentasDeAvaliacaoRow(
+            @NotNull NotebookEntity notebook,
+            @NotNull Map<String, Integer> workTypeWeights,
+            @NotNull GradeMatrix gradeMatrix,
+            int columnsCount,
+            int studentPosition //Student position in the grade matrix
+    ) {
+        //Create student's firsts cells
+        var studentRow = new String[columnsCount];
+        studentRow[0] = String.valueOf(studentPosition + 1);
+        studentRow[1] = notebook.getStudents().get(studentPosition).getName();
+        //Create student's firsts cells
+
+        var studentCellCount = 2;
+        for (Map.Entry<String, Integer> map:
+                workTypeWeights.entrySet()) {
+            if (map.getValue() <= 0) continue;
+            for (int workPosition:
+                    gradeMatrix.getWorksOfType(map.getKey())) {
+                if (gradeMatrix.hasGrade(studentPosition, workPosition)) {
+                    studentRow[studentCellCount] =
+                            String.valueOf(gradeMatrix.getGrade(studentPosition, workPosition));
+                    studentCellCount++;
                 }
             }
         }
-
-        ExcelUtils.setSheetHeaderRowStyles(workbook, firstRow);
-        ExcelUtils.setSheetHeaderRowStyles(workbook, secondRow);
-        ExcelUtils.setGlobalCellCentralizedStyle(workbook, ferramentasSheet, 2);
+        return studentRow;
     }
 
 }
@@ -0,0 +1,94 @@
+package com.api.notebook.utils;
+
+import com.api.notebook.models.SliceModel;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+public class ScrollUtils {
+
+    private static final String ID_KEY = "id";
+
+    //Field a listing can be sorted by, read from an entity property that is never null
+    //A null key can't be written to a cursor nor compared by the keyset predicate
+    public record SortField(String property, Class<?> type) {}
+
+    //Sort by a whitelisted field, then by id so every row has a unique position
+    public static @NotNull Sort getSort(String sortBy, String direction, @NotNull Map<String, SortField> sortFields) {
+        if (!sortFields.containsKey(sortBy)) {
+            throw new IllegalArgumentException("Campo de ordenação inválido!");
+        }
+        var sortDirection = Sort.Direction.fromOptionalString(direction)
+                .orElseThrow(() -> new IllegalArgumentException("Direção de ordenação inválida!"));
+        return Sort.by(sortDirection, sortFields.get(sortBy).property(), ID_KEY);
+    }
+
+    //Read the position a cursor points to, no cursor means the first slice
+    public static @NotNull KeysetScrollPosition decodeCursor(
+            String cursor,
+            String sortBy,
+            @NotNull Map<String, SortField> sortFields
+    ) {
+        if (cursor == null || cursor.isBlank()) return ScrollPosition.keyset();
+        var sortField = sortFields.get(sortBy);
+        if (sortField == null) throw new IllegalArgumentException("Campo de ordenação inválido!");
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        try {
+            var decodedCursor = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            for (String pair:
+                    decodedCursor.split("&")) {
+                var separator = pair.indexOf('=');
+                var key = URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8);
+                var value = URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+                var type = key.equals(ID_KEY) ? UUID.class :
+                        key.equals(sortField.property()) ? sortField.type() : null;
+                if (type == null) throw new IllegalArgumentException(key);
+                keys.put(key, parseKey(value, type));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor inválido!", e);
+        }
+
+        //A cursor only continues the sort it was created for
+        if (!keys.keySet().equals(Set.of(sortField.property(), ID_KEY))) {
+            throw new IllegalArgumentException("Cursor inválido!");
+        }
+        return ScrollPosition.forward(keys);
+    }
+
+    public static <T> @NotNull SliceModel<T> toSlice(@NotNull Window<T> window) {
+        String nextCursor = null;
+        if (window.hasNext() && !window.isEmpty()) {
+            var position = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+            nextCursor = encodeCursor(position.getKeys());
+        }
+        return new SliceModel<>(window.getContent(), window.hasNext(), nextCursor);
+    }
+
+    private static @NotNull String encodeCursor(@NotNull Map<String, ?> keys) {
+        var joiner = new StringJoiner("&");
+        keys.forEach((key, value) -> joiner.add(
+                URLEncoder.encode(key, StandardCharsets.UTF_8) + "=" +
+                URLEncoder.encode(Objects.requireNonNull(value, key).toString(), StandardCharsets.UTF_8)));
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(joiner.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parseKey(String value, Class<?> type) {
+        if (type == UUID.class) return UUID.fromString(value);
+        if (type == LocalDate.class) return LocalDate.parse(value);
+        if (type.isEnum()) return Enum.valueOf((Class<Enum>) type, value);
+        return value;
+    }
+
+}
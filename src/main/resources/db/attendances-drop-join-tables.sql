@@ -0,0 +1,22 @@
+-- Run on PostgreSQL in a later deploy, once the id arrays are in use and checked.
+-- Take a backup of both tables first, e.g.
+--   pg_dump -t attendances_present_students -t attendances_absent_students <database>
+-- It fails instead of dropping when an attendance still lacks its arrays,
+-- run attendances-students-ids.sql again in that case.
+BEGIN;
+
+DO $$
+BEGIN
+    IF EXISTS (
+        SELECT 1 FROM attendances
+        WHERE present_students_ids IS NULL OR absent_students_ids IS NULL
+    ) THEN
+        RAISE EXCEPTION 'Attendances without student ids, run attendances-students-ids.sql first';
+    END IF;
+END
+$$;
+
+DROP TABLE IF EXISTS attendances_present_students;
+DROP TABLE IF EXISTS attendances_absent_students;
+
+COMMIT;
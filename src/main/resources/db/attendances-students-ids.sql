@@ -0,0 +1,22 @@
+-- Run on PostgreSQL before deploying the attendance id arrays, and once more right after it.
+-- Copies the students of the old join tables into the arrays of the attendances that have none.
+-- The join tables are left in place, so the previous version keeps working and nothing is lost.
+-- The second run picks up attendances the previous version saved in between.
+BEGIN;
+
+ALTER TABLE attendances ADD COLUMN IF NOT EXISTS present_students_ids uuid[];
+ALTER TABLE attendances ADD COLUMN IF NOT EXISTS absent_students_ids uuid[];
+
+UPDATE attendances a
+SET present_students_ids = COALESCE(
+        (SELECT array_agg(j.student_id) FROM attendances_present_students j WHERE j.attendance_id = a.id),
+        '{}')
+WHERE a.present_students_ids IS NULL;
+
+UPDATE attendances a
+SET absent_students_ids = COALESCE(
+        (SELECT array_agg(j.student_id) FROM attendances_absent_students j WHERE j.attendance_id = a.id),
+        '{}')
+WHERE a.absent_students_ids IS NULL;
+
+COMMIT;
@@ -0,0 +1,21 @@
+-- Run once on PostgreSQL before deploying the grade upsert.
+-- The old create endpoint could give a student two grades in the same work, and with
+-- duplicates left in the table ddl-auto=update fails to add the unique constraint silently.
+BEGIN;
+
+-- Keep one grade per (work, student), the one with the highest id
+DELETE FROM grades g
+USING grades d
+WHERE g.work_id = d.work_id
+  AND g.student_id = d.student_id
+  AND g.id < d.id;
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'grades_work_id_student_id_key') THEN
+        ALTER TABLE grades ADD CONSTRAINT grades_work_id_student_id_key UNIQUE (work_id, student_id);
+    END IF;
+END
+$$;
+
+COMMIT;
@@ -0,0 +1,152 @@
+package com.api.notebook.services;
+
+import com.api.notebook.enums.*;
+import com.api.notebook.models.entities.*;
+import com.api.notebook.repositories.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//Not transactional, the upsert commits in transactions of its own that must see the test data
+@DataJpaTest
+@Import(GradeService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class GradeServiceTests {
+
+	@Autowired
+	private GradeService gradeService;
+
+	@Autowired
+	private GradeRepository gradeRepository;
+
+	@Autowired
+	private WorkRepository workRepository;
+
+	@Autowired
+	private NotebookRepository notebookRepository;
+
+	@Autowired
+	private StudentRepository studentRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	private WorkEntity work;
+	private List<StudentEntity> students;
+
+	@BeforeEach
+	void persistWork() {
+		var user = new UserEntity();
+		user.setName("Professor");
+		user.setEmail(UUID.randomUUID() + "@escola.com");
+		user.setRole(RoleEnum.ROLE_TCHR);
+		userRepository.save(user);
+
+		students = new ArrayList<>();
+		for (int x = 0; x < 3; x++) {
+			var student = new StudentEntity();
+			student.setName("Aluno " + x);
+			student.setNumber(x + 1);
+			student.setClasse(ClassEnum.Ensino_Fundamental_6_A);
+			students.add(studentRepository.save(student));
+		}
+
+		var notebook = new NotebookEntity();
+		notebook.setClasse(ClassEnum.Ensino_Fundamental_6_A);
+		notebook.setSubject(SubjectEnum.values()[0]);
+		notebook.setBimester(BimesterEnum.values()[0]);
+		notebook.setStatus(StatusEnum.ON);
+		notebook.setCreateDate(LocalDate.of(2023, 2, 1));
+		notebook.setUser(user);
+		notebookRepository.save(notebook);
+
+		work = new WorkEntity();
+		work.setTitle("Trabalho");
+		work.setType(WorksEnum.TRABALHO);
+		work.setDeliveryDate(LocalDate.of(2023, 2, 1));
+		work.setNotebook(notebook);
+		workRepository.save(work);
+	}
+
+	@AfterEach
+	void deleteAll() {
+		gradeRepository.deleteAll();
+		workRepository.deleteAll();
+		notebookRepository.deleteAll();
+		studentRepository.deleteAll();
+		userRepository.deleteAll();
+	}
+
+	@Test
+	void upsertInsertsTheMissingGrades() {
+		gradeService.upsertGradesByWork(work, Map.of(students.get(0).getId(), 7.5, students.get(1).getId(), 9.0));
+
+		assertThat(gradesByStudent())
+				.containsOnly(Map.entry(students.get(0).getId(), 7.5), Map.entry(students.get(1).getId(), 9.0));
+	}
+
+	@Test
+	void upsertUpdatesTheExistingGrade() {
+		gradeService.upsertGradesByWork(work, Map.of(students.get(0).getId(), 5.0));
+		gradeService.upsertGradesByWork(work, Map.of(students.get(0).getId(), 8.0, students.get(2).getId(), 6.0));
+
+		assertThat(gradeRepository.count()).isEqualTo(2);
+		assertThat(gradesByStudent())
+				.containsOnly(Map.entry(students.get(0).getId(), 8.0), Map.entry(students.get(2).getId(), 6.0));
+	}
+
+	@Test
+	void upsertRejectsUnknownStudentsWithoutSavingAny() {
+		var studentGrades = Map.of(students.get(0).getId(), 5.0, UUID.randomUUID(), 6.0);
+
+		assertThatThrownBy(() -> gradeService.upsertGradesByWork(work, studentGrades))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(gradeRepository.count()).isZero();
+	}
+
+	@Test
+	void concurrentUpsertsLeaveOneGradePerStudent() throws Exception {
+		var executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int round = 0; round < 10; round++) {
+				var start = new CountDownLatch(1);
+				List<Future<?>> futures = new ArrayList<>();
+				for (double grade : new double[] {round, round + 0.5}) {
+					futures.add(executor.submit(() -> {
+						start.await();
+						gradeService.upsertGradesByWork(work, Map.of(students.get(0).getId(), grade, students.get(1).getId(), grade));
+						return null;
+					}));
+				}
+				start.countDown();
+				for (Future<?> future : futures) {
+					future.get(30, TimeUnit.SECONDS); //Fails the test if either batch threw
+				}
+				assertThat(gradeRepository.count()).isEqualTo(2);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Map<UUID, Double> gradesByStudent() {
+		Map<UUID, Double> grades = new HashMap<>();
+		for (GradeEntity grade : gradeRepository.findByWorkId(work.getId())) {
+			grades.put(grade.getStudent().getId(), grade.getGrade());
+		}
+		return grades;
+	}
+
+}
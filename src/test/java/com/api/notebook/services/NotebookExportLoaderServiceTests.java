@@ -0,0 +1,126 @@
+package com.api.notebook.services;
+
+import com.api.notebook.enums.*;
+import com.api.notebook.models.entities.*;
+import com.api.notebook.utils.NotebookUtils;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(NotebookExportLoaderService.class)
+class NotebookExportLoaderServiceTests {
+
+	@Autowired
+	private NotebookExportLoaderService notebookExportLoaderService;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	void exportStatementsCountDoesNotGrowWithTheNotebook() throws IOException {
+		var smallNotebookStatements = countExportStatements(persistNotebook(3, 2, 2));
+		var largeNotebookStatements = countExportStatements(persistNotebook(30, 12, 8));
+
+		assertThat(largeNotebookStatements).isEqualTo(smallNotebookStatements);
+	}
+
+	//Load the notebook and build its spreadsheet, counting every statement sent to the database
+	private long countExportStatements(UUID notebookId) throws IOException {
+		entityManager.clear();
+		var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		var notebook = notebookExportLoaderService.loadNotebookForExport(notebookId).orElseThrow();
+		var workTypeWeights = new LinkedHashMap<String, Integer>();
+		workTypeWeights.put(WorksEnum.TRABALHO.name(), 6);
+		workTypeWeights.put(WorksEnum.TAREFA.name(), 4);
+		NotebookUtils.finalizeNotebook(notebook, workTypeWeights, Runnable::run, OutputStream.nullOutputStream());
+
+		return statistics.getPrepareStatementCount();
+	}
+
+	private UUID persistNotebook(int studentsCount, int lessonsCount, int worksCount) {
+		var user = new UserEntity();
+		user.setName("Professor");
+		user.setEmail(UUID.randomUUID() + "@escola.com");
+		user.setRole(RoleEnum.ROLE_TCHR);
+		entityManager.persist(user);
+
+		List<StudentEntity> students = new ArrayList<>();
+		for (int x = 0; x < studentsCount; x++) {
+			var student = new StudentEntity();
+			student.setName("Aluno " + x);
+			student.setNumber(x + 1);
+			student.setClasse(ClassEnum.Ensino_Fundamental_6_A);
+			students.add(entityManager.persist(student));
+		}
+
+		var notebook = new NotebookEntity();
+		notebook.setClasse(ClassEnum.Ensino_Fundamental_6_A);
+		notebook.setSubject(SubjectEnum.values()[0]);
+		notebook.setBimester(BimesterEnum.values()[0]);
+		notebook.setStatus(StatusEnum.ON);
+		notebook.setCreateDate(LocalDate.of(2023, 2, 1));
+		notebook.setUser(user);
+		notebook.setStudents(students);
+		entityManager.persist(notebook);
+
+		for (int x = 0; x < lessonsCount; x++) {
+			var lesson = new LessonEntity();
+			lesson.setTitle("Aula " + x);
+			lesson.setObservations("");
+			lesson.setQuantity(2);
+			lesson.setDate(LocalDate.of(2023, 2, 1).plusDays(x));
+			lesson.setNotebook(notebook);
+			entityManager.persist(lesson);
+
+			for (int y = 0; y < lesson.getQuantity(); y++) {
+				var attendance = new AttendanceEntity();
+				attendance.setLesson(lesson);
+				attendance.setPresentStudentsIds(students.subList(0, studentsCount - 1).stream().map(StudentEntity::getId).toArray(UUID[]::new));
+				attendance.setAbsentStudentsIds(students.subList(studentsCount - 1, studentsCount).stream().map(StudentEntity::getId).toArray(UUID[]::new));
+				entityManager.persist(attendance);
+			}
+		}
+
+		for (int x = 0; x < worksCount; x++) {
+			var work = new WorkEntity();
+			work.setTitle("Trabalho " + x);
+			work.setType(x % 2 == 0 ? WorksEnum.TRABALHO : WorksEnum.TAREFA);
+			work.setDeliveryDate(LocalDate.of(2023, 2, 1).plusDays(x));
+			work.setNotebook(notebook);
+			entityManager.persist(work);
+
+			for (StudentEntity student:
+					students) {
+				var grade = new GradeEntity();
+				grade.setGrade(7.5);
+				grade.setWork(work);
+				grade.setStudent(student);
+				entityManager.persist(grade);
+			}
+		}
+
+		entityManager.flush();
+		return notebook.getId();
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.api.notebook.services;
+
+import com.api.notebook.enums.ClassEnum;
+import com.api.notebook.models.entities.StudentEntity;
+import com.api.notebook.repositories.ClassRosterRepository;
+import com.api.notebook.repositories.StudentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+//Not transactional, each write commits under the class lock like it does in the application
+@DataJpaTest
+@Import(StudentService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StudentServiceTests {
+
+	private static final ClassEnum CLASSE = ClassEnum.Ensino_Fundamental_6_A;
+
+	@Autowired
+	private StudentService studentService;
+
+	@Autowired
+	private StudentRepository studentRepository;
+
+	@Autowired
+	private ClassRosterRepository classRosterRepository;
+
+	@AfterEach
+	void deleteAll() {
+		studentRepository.deleteAll();
+		classRosterRepository.deleteAll();
+	}
+
+	@Test
+	void createStudentInAnEmptyClassGetsNumberOne() {
+		createStudent("Bruno", true);
+		createStudent("Carla", false, ClassEnum.Ensino_Fundamental_6_B);
+
+		assertThat(studentService.findAllStudentsByClasse(CLASSE))
+				.extracting(StudentEntity::getName, StudentEntity::getNumber)
+				.containsExactly(tuple("Bruno", 1));
+		assertThat(studentService.findAllStudentsByClasse(ClassEnum.Ensino_Fundamental_6_B))
+				.extracting(StudentEntity::getName, StudentEntity::getNumber)
+				.containsExactly(tuple("Carla", 1));
+	}
+
+	@Test
+	void createStudentAppendsTheUnorderedOnes() {
+		createStudent("Daniel", true);
+		createStudent("Zeca", false);
+		createStudent("Ana", false);
+
+		assertThat(studentService.findAllStudentsByClasse(CLASSE))
+				.extracting(StudentEntity::getName, StudentEntity::getNumber)
+				.containsExactly(tuple("Daniel", 1), tuple("Zeca", 2), tuple("Ana", 3));
+	}
+
+	@Test
+	void createStudentInsertsTheOrderedOnesByName() {
+		createStudent("Bruno", true);
+		createStudent("Daniel", true);
+		createStudent("Zeca", false);
+		createStudent("Carla", true);
+		createStudent("Ana", true);
+		createStudent("Érica", true);
+
+		assertThat(studentService.findAllStudentsByClasse(CLASSE))
+				.extracting(StudentEntity::getName, StudentEntity::getNumber)
+				.containsExactly(
+						tuple("Ana", 1),
+						tuple("Bruno", 2),
+						tuple("Carla", 3),
+						tuple("Daniel", 4),
+						tuple("Érica", 5),
+						tuple("Zeca", 6)
+				);
+	}
+
+	@Test
+	void deleteStudentClosesTheGap() {
+		createStudent("Ana", true);
+		var bruno = createStudent("Bruno", true);
+		createStudent("Carla", true);
+		createStudent("Zeca", false);
+
+		studentService.deleteStudent(bruno);
+
+		assertThat(studentService.findAllStudentsByClasse(CLASSE))
+				.extracting(StudentEntity::getName, StudentEntity::getNumber)
+				.containsExactly(tuple("Ana", 1), tuple("Carla", 2), tuple("Zeca", 3));
+	}
+
+	@Test
+	void deleteStudentIgnoresAMissingStudent() {
+		createStudent("Ana", true);
+		var missingStudent = new StudentEntity();
+		missingStudent.setId(UUID.randomUUID());
+		missingStudent.setClasse(CLASSE);
+
+		studentService.deleteStudent(missingStudent);
+
+		assertThat(studentService.findAllStudentsByClasse(CLASSE))
+				.extracting(StudentEntity::getName, StudentEntity::getNumber)
+				.containsExactly(tuple("Ana", 1));
+		assertThat(classRosterRepository.findById(CLASSE).orElseThrow().getVersion()).isEqualTo(1L);
+	}
+
+	@Test
+	void everyWriteBumpsTheRosterVersion() {
+		createStudent("Ana", true);
+		var bruno = createStudent("Bruno", false);
+		studentService.deleteStudent(bruno);
+
+		assertThat(classRosterRepository.findById(CLASSE).orElseThrow().getVersion()).isEqualTo(3L);
+	}
+
+	private StudentEntity createStudent(String name, boolean isOrder) {
+		return createStudent(name, isOrder, CLASSE);
+	}
+
+	private StudentEntity createStudent(String name, boolean isOrder, ClassEnum classe) {
+		var student = new StudentEntity();
+		student.setName(name);
+		student.setIsOrder(isOrder);
+		student.setClasse(classe);
+		studentService.createStudent(student);
+		return student;
+	}
+
+}